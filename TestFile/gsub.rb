@@ -0,0 +1,18 @@
+# sub and gsub with patterns that can match empty, as ruby prints them
+# java ruby.Ruby TestFile/gsub.rb
+# -a-b-c-
+# -abc
+# -a--c-
+# <>a<>b<>
+# hell wrld
+# []a[b][]c[]
+# -
+# -
+puts "abc".gsub(/x*/, "-")
+puts "abc".sub(/x*/, "-")
+puts "abc".gsub(/b*/, "-")
+puts "ab".gsub(//, "<>")
+puts "hello world".gsub(/o*/, "")
+puts "abc".gsub(/(b)?/, "[\\1]")
+puts "".gsub(/x*/, "-")
+puts "".sub(/x*/, "-")
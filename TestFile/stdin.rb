@@ -0,0 +1,11 @@
+# reads stdin a line at a time, the last line may come without its "\n"
+# printf 'a\nb' | java ruby.Ruby TestFile/stdin.rb
+# 1: a
+# 2: b
+count = 0
+line = gets()
+while line != nil
+  count += 1
+  puts count.to_s + ": " + line.chomp
+  line = gets()
+end
@@ -0,0 +1,99 @@
+package ruby;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Compares RubyHash with java.util.LinkedHashMap, the obvious alternative
+ * that also keeps insertion order.
+ * Keys and values are created up front and shared by both tables, so the
+ * numbers are the cost of the table structure alone.
+ *
+ * javac -d out ruby/*.java bench/HashFootprint.java
+ * java -cp out ruby.HashFootprint [entries]
+ */
+class HashFootprint {
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Object[] stringKeys = new Object[entries];
+        Object[] integerKeys = new Object[entries];
+        Object[] values = new Object[entries];
+        for (int i = 0; i < entries; i++) {
+            stringKeys[i] = new RubyString("key" + i);
+            integerKeys[i] = Long.valueOf(i);
+            values[i] = Long.valueOf(i);
+        }
+        report("String keys", entries, stringKeys, values);
+        report("Integer keys", entries, integerKeys, values);
+    }
+
+    private static void report(String title, int entries, Object[] keys, Object[] values) {
+        System.out.println(title + ", " + entries + " entries");
+        long before = usedMemory();
+        long start = System.nanoTime();
+        RubyHash hash = new RubyHash();
+        for (int i = 0; i < entries; i++) {
+            hash.put(keys[i], values[i]);
+        }
+        long hashTime = System.nanoTime() - start;
+        long hashBytes = usedMemory() - before;
+
+        before = usedMemory();
+        start = System.nanoTime();
+        Map<Object, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < entries; i++) {
+            map.put(keys[i], values[i]);
+        }
+        long mapTime = System.nanoTime() - start;
+        long mapBytes = usedMemory() - before;
+
+        // string keys are copied on insert, exclude that copy from the table cost
+        long keyCopies = keys[0] instanceof RubyString ? copiedKeyBytes(keys) : 0;
+        print("RubyHash", hashBytes - keyCopies, hashTime, entries);
+        print("LinkedHashMap", mapBytes, mapTime, entries);
+        System.out.println("  lookups: RubyHash " + lookups(hash, keys) / 1_000_000 + " ms, LinkedHashMap "
+                + lookups(map, keys) / 1_000_000 + " ms");
+        // keep both alive until both were measured
+        if (hash.size() != map.size())
+            throw new AssertionError();
+    }
+
+    private static long copiedKeyBytes(Object[] keys) {
+        long before = usedMemory();
+        Object[] copies = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            copies[i] = new RubyString(keys[i].toString());
+        }
+        long bytes = usedMemory() - before;
+        if (copies.length != keys.length)
+            throw new AssertionError();
+        return bytes;
+    }
+
+    private static long lookups(Object table, Object[] keys) {
+        long start = System.nanoTime();
+        long found = 0;
+        for (int round = 0; round < 5; round++) {
+            for (Object key : keys) {
+                Object value = table instanceof RubyHash ? ((RubyHash) table).get(key) : ((Map<?, ?>) table).get(key);
+                if (value != null)
+                    found++;
+            }
+        }
+        if (found != 5L * keys.length)
+            throw new AssertionError();
+        return System.nanoTime() - start;
+    }
+
+    private static void print(String name, long bytes, long nanos, int entries) {
+        System.out.printf("  %-14s %6.1f bytes/entry, insert %d ms%n", name, (double) bytes / entries, nanos / 1_000_000);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,34 @@
+# Attribute reads and writes on many objects of the same shape
+# java -cp out ruby.Ruby bench/attribute_access.rb
+class Particle
+  attr_accessor :x, :y, :vx, :vy
+  def initialize(x, y, vx, vy)
+    @x = x
+    @y = y
+    @vx = vx
+    @vy = vy
+  end
+end
+
+particles = []
+i = 0
+while i < 1000
+  particles << Particle.new(i, i * 2, 1, -1)
+  i += 1
+end
+
+start = clock()
+step = 0
+while step < 300
+  for p in particles
+    p.x = p.x + p.vx
+    p.y += p.vy
+  end
+  step += 1
+end
+total = 0
+for p in particles
+  total += p.x + p.y
+end
+puts total
+puts "attribute access: " + (clock() - start).to_s + "s"
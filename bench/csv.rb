@@ -0,0 +1,45 @@
+# CSV reading and writing, 2 million rows through CSV.open and CSV.foreach
+# java -cp out ruby.Ruby bench/csv.rb
+path = "/tmp/csv_bench.csv"
+n = 2000000
+start = clock()
+CSV.open(path, "w") do |csv|
+  csv << ["id", "name", "score", "ratio", "city"]
+  i = 0
+  while i < n
+    csv << [i, "user" + i.to_s, i % 1000, i / 7.0, "Town, " + (i % 50).to_s]
+    i += 1
+  end
+end
+puts "write: " + (clock() - start).to_s + "s"
+
+start = clock()
+rows = 0
+CSV.foreach(path) do |row|
+  rows += 1
+end
+puts "foreach: " + rows.to_s + " rows in " + (clock() - start).to_s + "s"
+
+start = clock()
+total = 0
+header = true
+CSV.foreach(path, columns: [2], converters: :integer) do |row|
+  if header
+    header = false
+    next
+  end
+  total += row[0]
+end
+puts "one column: " + total.to_s + " in " + (clock() - start).to_s + "s"
+
+start = clock()
+sum = 0.0
+header = true
+CSV.foreach(path, converters: :numeric) do |id, name, score, ratio, city|
+  if header
+    header = false
+    next
+  end
+  sum += ratio
+end
+puts "numeric: " + sum.to_s + " in " + (clock() - start).to_s + "s"
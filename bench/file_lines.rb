@@ -0,0 +1,33 @@
+# Line by line file reading, File.foreach over a generated log
+# java -cp out ruby.Ruby bench/file_lines.rb
+path = "/tmp/file_lines_bench.log"
+n = 3000000
+start = clock()
+File.open(path, "w") do |f|
+  i = 0
+  while i < n
+    f.puts("2024-01-01 12:00:00 INFO request " + i.to_s + " served in 12ms")
+    i += 1
+  end
+end
+puts "write: " + (clock() - start).to_s + "s"
+
+start = clock()
+lines = 0
+bytes = 0
+File.foreach(path) do |line|
+  lines += 1
+  bytes += line.length
+end
+puts "foreach: " + lines.to_s + " lines, " + bytes.to_s + " bytes in " + (clock() - start).to_s + "s"
+
+start = clock()
+errors = 0
+File.open(path) do |f|
+  f.each_line do |line|
+    if line.end_with?("9 served in 12ms\n")
+      errors += 1
+    end
+  end
+end
+puts "each_line: " + errors.to_s + " matches in " + (clock() - start).to_s + "s"
@@ -0,0 +1,37 @@
+# Block iteration, inlined builtin iterators next to a while loop and a yielding method
+# java -cp out ruby.Ruby bench/iterators.rb
+def each_upto(n)
+  i = 0
+  while i < n
+    yield i
+    i += 1
+  end
+end
+
+n = 1000000
+values = []
+n.times { |i| values.push(i) }
+
+start = clock()
+i = 0
+sum = 0
+while i < n
+  sum += i
+  i += 1
+end
+puts "while: " + (clock() - start).to_s + "s"
+
+start = clock()
+sum = 0
+n.times { |i| sum += i }
+puts "times: " + (clock() - start).to_s + "s"
+
+start = clock()
+sum = 0
+values.each { |v| sum += v }
+puts "array each: " + (clock() - start).to_s + "s"
+
+start = clock()
+sum = 0
+each_upto(n) { |i| sum += i }
+puts "yield: " + (clock() - start).to_s + "s"
@@ -0,0 +1,50 @@
+# JSON throughput on a document of about 100 MB, an array of 550 thousand records
+# java -cp out ruby.Ruby bench/json.rb
+path = "/tmp/json_bench.json"
+n = 550000
+start = clock()
+File.open(path, "w") do |f|
+  f.print("[")
+  i = 0
+  while i < n
+    if i > 0
+      f.print(",\n")
+    end
+    record = {"id" => i, "name" => "user" + i.to_s, "email" => "user" + i.to_s + "@example.com",
+              "score" => i / 7.0, "active" => i % 3 == 0, "tags" => ["alpha", "beta", "gamma"],
+              "address" => {"city" => "Chennai", "zip" => 600000 + i % 100}}
+    JSON.dump(record, f)
+    i += 1
+  end
+  f.print("]\n")
+end
+mb = File.read(path).length / 1000000.0
+puts "dump: " + mb.to_s + " MB in " + (clock() - start).to_s + "s"
+
+start = clock()
+doc = JSON.load_file(path)
+seconds = clock() - start
+puts "load_file: " + doc.length.to_s + " records, " + (mb / seconds).to_s + " MB/s"
+
+start = clock()
+text = JSON.generate(doc)
+seconds = clock() - start
+doc = nil
+puts "generate: " + (text.length / 1000000.0).to_s + " MB, " + (mb / seconds).to_s + " MB/s"
+text = nil
+
+start = clock()
+total = 0
+JSON.foreach(path) do |record|
+  total += record["address"]["zip"]
+end
+seconds = clock() - start
+puts "foreach: " + total.to_s + ", " + (mb / seconds).to_s + " MB/s"
+
+start = clock()
+events = 0
+JSON.stream(path) do |event, value|
+  events += 1
+end
+seconds = clock() - start
+puts "stream: " + events.to_s + " events, " + (mb / seconds).to_s + " MB/s"
@@ -0,0 +1,51 @@
+# Method call throughput, one monomorphic and one polymorphic call site
+# java -cp out ruby.Ruby bench/method_calls.rb
+class Shape
+  def initialize(size)
+    @size = size
+  end
+  def grow
+    @size += 1
+  end
+end
+
+class Square < Shape
+  def area
+    @size * @size
+  end
+end
+
+class Rect < Shape
+  def area
+    @size * 2
+  end
+end
+
+class Circle < Shape
+  def area
+    @size * 3
+  end
+end
+
+square = Square.new(2)
+start = clock()
+i = 0
+while i < 500000
+  square.grow
+  i += 1
+end
+puts square.area
+puts "monomorphic: " + (clock() - start).to_s + "s"
+
+shapes = [Square.new(1), Rect.new(2), Circle.new(3)]
+start = clock()
+total = 0
+i = 0
+while i < 150000
+  for s in shapes
+    total += s.area
+  end
+  i += 1
+end
+puts total
+puts "polymorphic: " + (clock() - start).to_s + "s"
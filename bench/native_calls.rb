@@ -0,0 +1,42 @@
+# Native function throughput, intrinsified calls next to plain native ones
+# java -cp out ruby.Ruby bench/native_calls.rb
+class Box
+  def initialize(items)
+    @items = items
+  end
+  def length
+    @items.length
+  end
+end
+
+n = 1000000
+values = [5, -3, 8, 1]
+word = "native"
+box = Box.new(values)
+
+start = clock()
+i = 0
+total = 0.0
+while i < n
+  total += Math.sqrt(i)
+  i += 1
+end
+puts "Math.sqrt: " + (clock() - start).to_s + "s"
+
+start = clock()
+i = 0
+sum = 0
+while i < n
+  sum += (i - 500000).abs + values.max + word.length
+  i += 1
+end
+puts "abs/max/length: " + (clock() - start).to_s + "s"
+
+start = clock()
+i = 0
+sum = 0
+while i < n
+  sum += i.gcd(12) + box.length
+  i += 1
+end
+puts "gcd/user length: " + (clock() - start).to_s + "s"
@@ -0,0 +1,20 @@
+# Output throughput, millions of short lines of integers, strings and floats
+# time java -cp out ruby.Ruby --flush=full bench/output.rb > /dev/null
+n = 2000000
+i = 0
+while i < n
+  puts i
+  i += 1
+end
+i = 0
+while i < n
+  print "line ", i, "\n"
+  i += 1
+end
+x = 0.0
+i = 0
+while i < n
+  puts x
+  x += 0.25
+  i += 1
+end
@@ -0,0 +1,226 @@
+package ruby;
+
+import java.math.BigInteger;
+
+/*
+ * Number crunching for the binary operators
+ * The interpreter unboxes both operands once, does the work on primitives
+ * and boxes the result at most once. Integers in -1024..65536 come from a
+ * cache so counting loops over them don't allocate a new Long on every
+ * iteration. Larger Integers and every Float result are still a new box:
+ * values live in Object slots all through the Environment and the
+ * visitors, so there is no unboxed local to keep them in.
+ *
+ * Ruby integers have no fixed size. They live in a long as long as they
+ * fit, overflow is caught by the Math.*Exact intrinsics and the operation
+ * is redone on BigInteger. Big results that fit in a long again are
+ * turned back into a Long by normalize, so a value has only one form.
+ */
+final class Arithmetic {
+    private static final int CACHE_LOW = -1024;
+    private static final int CACHE_HIGH = 1 << 16;
+    // filled lazily, a slot is the same Long every time once set
+    private static final Long[] cache = new Long[CACHE_HIGH - CACHE_LOW + 1];
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private Arithmetic() {
+    }
+    // boxes a long, reusing the cached Long for small values
+    static Long box(long value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            int slot = (int) value - CACHE_LOW;
+            Long boxed = cache[slot];
+            if (boxed == null) {
+                boxed = Long.valueOf(value);
+                cache[slot] = boxed;
+            }
+            return boxed;
+        }
+        return value;
+    }
+    // a BigInteger result goes back to a Long when it fits
+    static Object normalize(BigInteger value) {
+        if (value.compareTo(LONG_MIN) >= 0 && value.compareTo(LONG_MAX) <= 0) {
+            return box(value.longValue());
+        }
+        return value;
+    }
+
+    static boolean isInteger(Object object) {
+        return object instanceof Long || object instanceof BigInteger;
+    }
+
+    static BigInteger toBig(Object integer) {
+        if (integer instanceof BigInteger)
+            return (BigInteger) integer;
+        return BigInteger.valueOf((Long) integer);
+    }
+    /*
+     * long op long, the fast path
+     * comparisons return the cached Boolean instances
+     */
+    static Object integer(TokenType operator, Token token, long left, long right) {
+        try {
+            switch (operator) {
+                case PLUS:
+                    return box(Math.addExact(left, right));
+                case MINUS:
+                    return box(Math.subtractExact(left, right));
+                case STAR:
+                    return box(Math.multiplyExact(left, right));
+                case SLASH:
+                    checkDivisor(token, right);
+                    // ruby rounds integer division towards negative infinity
+                    if (left == Long.MIN_VALUE && right == -1)
+                        break;
+                    return box(Math.floorDiv(left, right));
+                case MOD:
+                    checkDivisor(token, right);
+                    return box(Math.floorMod(left, right));
+                case STAR_STAR:
+                    if (right < 0) {
+                        break;
+                    }
+                    return box(power(left, right));
+                case LEFT_SHIFT:
+                    if (right >= 0 && right < 64 && (left << right) >> right == left)
+                        return box(left << right);
+                    if (right < 0 && right > -64)
+                        return box(left >> -right);
+                    break;
+                case RIGHT_SHIFT:
+                    if (right >= 0)
+                        return box(right < 64 ? left >> right : (left < 0 ? -1 : 0));
+                    break;
+                case GREATER:
+                    return left > right;
+                case GREATER_EQUAL:
+                    return left >= right;
+                case LESS:
+                    return left < right;
+                case LESS_EQUAL:
+                    return left <= right;
+                default:
+                    throw new RuntimeError(token, "Unsupported operator for integers.");
+            }
+        } catch (ArithmeticException overflow) {
+            // fall through to the BigInteger path
+        }
+        return big(operator, token, BigInteger.valueOf(left), BigInteger.valueOf(right));
+    }
+    // integer op integer when at least one side did not fit in a long
+    static Object big(TokenType operator, Token token, BigInteger left, BigInteger right) {
+        switch (operator) {
+            case PLUS:
+                return normalize(left.add(right));
+            case MINUS:
+                return normalize(left.subtract(right));
+            case STAR:
+                return normalize(left.multiply(right));
+            case SLASH:
+                checkDivisor(token, right.signum());
+                BigInteger[] quotient = left.divideAndRemainder(right);
+                // same floor rounding as the long path
+                if (quotient[1].signum() != 0 && quotient[1].signum() != right.signum()) {
+                    return normalize(quotient[0].subtract(BigInteger.ONE));
+                }
+                return normalize(quotient[0]);
+            case MOD:
+                checkDivisor(token, right.signum());
+                BigInteger remainder = left.mod(right.abs());
+                if (right.signum() < 0 && remainder.signum() != 0) {
+                    remainder = remainder.add(right);
+                }
+                return normalize(remainder);
+            case STAR_STAR:
+                // ruby gives a Rational here, we print it as a fraction
+                if (right.signum() < 0) {
+                    return new RubyString("1/" + left.pow(exponent(token, right.negate())));
+                }
+                return normalize(left.pow(exponent(token, right)));
+            case LEFT_SHIFT:
+                if (right.signum() < 0)
+                    return normalize(left.shiftRight(exponent(token, right.negate())));
+                return normalize(left.shiftLeft(exponent(token, right)));
+            case RIGHT_SHIFT:
+                if (right.signum() < 0)
+                    return normalize(left.shiftLeft(exponent(token, right.negate())));
+                return normalize(left.shiftRight(exponent(token, right)));
+            case GREATER:
+                return left.compareTo(right) > 0;
+            case GREATER_EQUAL:
+                return left.compareTo(right) >= 0;
+            case LESS:
+                return left.compareTo(right) < 0;
+            case LESS_EQUAL:
+                return left.compareTo(right) <= 0;
+            default:
+                throw new RuntimeError(token, "Unsupported operator for integers.");
+        }
+    }
+    // float op float, an integer operand has already been widened
+    static Object floating(TokenType operator, Token token, double left, double right) {
+        switch (operator) {
+            case PLUS:
+                return left + right;
+            case MINUS:
+                return left - right;
+            case STAR:
+                return left * right;
+            case SLASH:
+                return left / right;
+            case MOD:
+                return left % right;
+            case STAR_STAR:
+                return Math.pow(left, right);
+            case GREATER:
+                return left > right;
+            case GREATER_EQUAL:
+                return left >= right;
+            case LESS:
+                return left < right;
+            case LESS_EQUAL:
+                return left <= right;
+            default:
+                throw new RuntimeError(token, "Unsupported operator for floats.");
+        }
+    }
+    // negation only overflows for Long.MIN_VALUE
+    static Object negate(Object integer) {
+        if (integer instanceof Long) {
+            long value = (Long) integer;
+            if (value != Long.MIN_VALUE) {
+                return box(-value);
+            }
+        }
+        return normalize(toBig(integer).negate());
+    }
+    // square and multiply, throws ArithmeticException once it leaves the long range
+    private static long power(long base, long exponent) {
+        long result = 1;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result = Math.multiplyExact(result, base);
+            }
+            exponent >>= 1;
+            if (exponent > 0) {
+                base = Math.multiplyExact(base, base);
+            }
+        }
+        return result;
+    }
+
+    private static int exponent(Token token, BigInteger exponent) {
+        if (exponent.bitLength() > 31) {
+            throw new RuntimeError(token, "exponent is too large");
+        }
+        return exponent.intValue();
+    }
+    // integer division by zero is an error in ruby, float division gives Infinity
+    private static void checkDivisor(Token token, long divisor) {
+        if (divisor == 0) {
+            throw new RuntimeError(token, "divided by 0 (ZeroDivisionError)");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ruby;
+
+import java.util.List;
+
+/*
+ * The methods made by attr_reader, attr_writer and attr_accessor
+ * They read or write one instance variable through their own shape cache,
+ * call sites run them directly without setting up a frame.
+ */
+class Attribute implements RubyCallable {
+    private final Symbol variable;
+    private final boolean writer;
+    private final Shape.Cache cache = new Shape.Cache();
+
+    Attribute(Symbol variable, boolean writer) {
+        this.variable = variable;
+        this.writer = writer;
+    }
+
+    @Override
+    public int arity() {
+        return writer ? 1 : 0;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return writer ? write(interpreter.self, arguments.get(0)) : read(interpreter.self);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return read(interpreter.self);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object value) {
+        return write(interpreter.self, value);
+    }
+
+    Object read(RubyInstance instance) {
+        return cache.read(instance, variable);
+    }
+
+    Object write(RubyInstance instance, Object value) {
+        cache.write(instance, variable, value);
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "<attr " + variable + ">";
+    }
+}
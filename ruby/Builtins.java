@@ -0,0 +1,592 @@
+package ruby;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/*
+ * Methods of the built in value types, called as value.name(arguments)
+ * The interpreter hands every method call on a non user value to send
+ * which picks the method by the receiver's type and the method name.
+ */
+final class Builtins {
+    private Builtins() {
+    }
+
+    static Object send(Interpreter interpreter, Object receiver, Token name, List<Object> arguments) {
+        if (receiver instanceof RubyRange) {
+            return range(interpreter, (RubyRange) receiver, name, arguments);
+        }
+        if (receiver instanceof RubyString) {
+            return string(interpreter, (RubyString) receiver, name, arguments);
+        }
+        if (receiver instanceof RubyArray) {
+            return array(interpreter, (RubyArray) receiver, name, arguments);
+        }
+        if (receiver instanceof RubyHash) {
+            return hash(interpreter, (RubyHash) receiver, name, arguments);
+        }
+        if (receiver instanceof Symbol) {
+            return symbol(interpreter, (Symbol) receiver, name, arguments);
+        }
+        if (receiver instanceof RubyRegexp) {
+            return regexp(interpreter, (RubyRegexp) receiver, name, arguments);
+        }
+        if (receiver instanceof RubyMatch) {
+            return matchData(interpreter, (RubyMatch) receiver, name, arguments);
+        }
+        if (receiver instanceof RubyClass) {
+            return klass(interpreter, (RubyClass) receiver, name, arguments);
+        }
+        if (receiver instanceof RubyInstance) {
+            return instance(interpreter, (RubyInstance) receiver, name, arguments);
+        }
+        if (receiver instanceof RubyModule) {
+            return module(interpreter, (RubyModule) receiver, name, arguments);
+        }
+        if (receiver instanceof RubyIO) {
+            return natives(interpreter, Natives.IO, receiver, name, arguments);
+        }
+        if (receiver instanceof CsvWriter) {
+            return natives(interpreter, Natives.CSV_WRITER, receiver, name, arguments);
+        }
+        return object(interpreter, receiver, name, arguments);
+    }
+    // the IO and CSV natives, some of them need the interpreter
+    private static Object natives(Interpreter interpreter, RubyModule module, Object receiver, Token name,
+            List<Object> arguments) {
+        NativeFunction method = module.function(name.symbol(), arguments.size() + 1);
+        if (method == null)
+            return object(interpreter, receiver, name, arguments);
+        checkArity(name, arguments, method.arity() - 1);
+        return method.callOn(interpreter, receiver, arguments);
+    }
+    // methods every value has
+    private static Object object(Interpreter interpreter, Object receiver, Token name, List<Object> arguments) {
+        switch (name.lexeme) {
+            case "to_s":
+                checkArity(name, arguments, 0);
+                return new RubyString(stringify(receiver));
+            case "nil?":
+                checkArity(name, arguments, 0);
+                return receiver == null;
+            default:
+                // the Integer, Float and String natives
+                NativeFunction method = Natives.method(receiver, name.symbol());
+                if (method != null) {
+                    checkArity(name, arguments, method.arity() - 1);
+                    return method.callOn(interpreter, receiver, arguments);
+                }
+                throw new RuntimeError(name,
+                        "undefined method '" + name.lexeme + "' for " + typeName(receiver));
+        }
+    }
+    // Math.name(arguments) and Math::NAME
+    private static Object module(Interpreter interpreter, RubyModule module, Token name, List<Object> arguments) {
+        NativeFunction function = module.function(name.symbol(), arguments.size());
+        if (function != null) {
+            checkArity(name, arguments, function.arity());
+            return function.call(interpreter, arguments);
+        }
+        if (arguments.isEmpty() && module.hasConstant(name.symbol()))
+            return module.constant(name.symbol());
+        throw new RuntimeError(name, "undefined method '" + name.lexeme + "' for module " + module.name);
+    }
+
+    private static Object klass(Interpreter interpreter, RubyClass klass, Token name, List<Object> arguments) {
+        switch (name.lexeme) {
+            case "new":
+                // Regexp.new(string), built at run time so it goes through the cache
+                if (klass == RubyRegexp.CLASS) {
+                    if (arguments.size() == 1 && arguments.get(0) instanceof RubyRegexp)
+                        return arguments.get(0);
+                    if (arguments.size() != 1 && arguments.size() != 2)
+                        checkArity(name, arguments, 1);
+                    // a truthy second argument means ignore case
+                    Object ignoreCase = arguments.size() == 2 ? arguments.get(1) : null;
+                    String options = ignoreCase != null && !Boolean.FALSE.equals(ignoreCase) ? "i" : "";
+                    return RubyRegexp.compile(name, checkString(name, arguments.get(0)).toString(), options);
+                }
+                return interpreter.instantiate(name, klass, arguments);
+            case "name":
+                checkArity(name, arguments, 0);
+                return new RubyString(klass.name);
+            case "superclass":
+                checkArity(name, arguments, 0);
+                return klass.superclass;
+            case "===":
+                checkArity(name, arguments, 1);
+                return arguments.get(0) instanceof RubyInstance
+                        && ((RubyInstance) arguments.get(0)).klass.isSubclassOf(klass);
+            default:
+                return object(interpreter, klass, name, arguments);
+        }
+    }
+    // methods every object has unless its class defines them
+    private static Object instance(Interpreter interpreter, RubyInstance instance, Token name, List<Object> arguments) {
+        switch (name.lexeme) {
+            case "class":
+                checkArity(name, arguments, 0);
+                return instance.klass;
+            case "is_a?":
+            case "kind_of?":
+            case "instance_of?":
+                checkArity(name, arguments, 1);
+                if (!(arguments.get(0) instanceof RubyClass)) {
+                    throw new RuntimeError(name, "class or module required");
+                }
+                RubyClass klass = (RubyClass) arguments.get(0);
+                return name.lexeme.equals("instance_of?") ? instance.klass == klass : instance.klass.isSubclassOf(klass);
+            case "respond_to?":
+                checkArity(name, arguments, 1);
+                Object method = arguments.get(0);
+                Symbol symbol = method instanceof Symbol ? (Symbol) method : Symbol.intern(checkString(name, method).toString());
+                return instance.klass.findMethod(symbol) != null;
+            case "inspect":
+                checkArity(name, arguments, 0);
+                return new RubyString(instance.inspect());
+            default:
+                return object(interpreter, instance, name, arguments);
+        }
+    }
+
+    private static Object range(Interpreter interpreter, RubyRange range, Token name, List<Object> arguments) {
+        switch (name.lexeme) {
+            case "include?":
+            case "member?":
+            case "cover?":
+            case "===":
+                checkArity(name, arguments, 1);
+                return range.includes(arguments.get(0));
+            case "step":
+                checkArity(name, arguments, 1);
+                return range.step(name, arguments.get(0));
+            case "size":
+            case "count":
+                checkArity(name, arguments, 0);
+                return range.size();
+            case "sum":
+                checkArity(name, arguments, 0);
+                return range.sum();
+            case "first":
+            case "begin":
+            case "min":
+                checkArity(name, arguments, 0);
+                return range.begin;
+            case "max":
+                checkArity(name, arguments, 0);
+                return range.isCounted() ? Arithmetic.box(range.last()) : range.end;
+            case "last":
+            case "end":
+                checkArity(name, arguments, 0);
+                return range.end;
+            case "exclude_end?":
+                checkArity(name, arguments, 0);
+                return range.exclusive;
+            case "to_a":
+                checkArity(name, arguments, 0);
+                RubyArray array = new RubyArray();
+                for (Object value : range)
+                    array.push(value);
+                return array;
+            default:
+                return object(interpreter, range, name, arguments);
+        }
+    }
+
+    private static Object string(Interpreter interpreter, RubyString string, Token name, List<Object> arguments) {
+        switch (name.lexeme) {
+            case "length":
+            case "size":
+                checkArity(name, arguments, 0);
+                return Arithmetic.box(string.length());
+            case "empty?":
+                checkArity(name, arguments, 0);
+                return string.length() == 0;
+            case "concat":
+                checkArity(name, arguments, 1);
+                return string.append(checkString(name, arguments.get(0)));
+            case "include?":
+                checkArity(name, arguments, 1);
+                return string.toString().contains(checkString(name, arguments.get(0)));
+            case "upcase":
+                checkArity(name, arguments, 0);
+                return new RubyString(string.toString().toUpperCase());
+            case "downcase":
+                checkArity(name, arguments, 0);
+                return new RubyString(string.toString().toLowerCase());
+            case "to_s":
+                checkArity(name, arguments, 0);
+                return string;
+            case "to_sym":
+                checkArity(name, arguments, 0);
+                return Symbol.intern(string.toString());
+            case "=~":
+                checkArity(name, arguments, 1);
+                return matchIndex(name, string, arguments.get(0));
+            case "match":
+                checkArity(name, arguments, 1);
+                return toRegexp(name, arguments.get(0)).match(string, 0);
+            case "match?":
+                checkArity(name, arguments, 1);
+                return toRegexp(name, arguments.get(0)).matches(string);
+            case "sub":
+            case "gsub":
+                checkArity(name, arguments, 2);
+                return pattern(name, arguments.get(0)).replace(string, checkString(name, arguments.get(1)),
+                        name.lexeme.equals("gsub"));
+            case "scan":
+                checkArity(name, arguments, 1);
+                return scan(pattern(name, arguments.get(0)), string);
+            case "split":
+                if (arguments.size() > 1)
+                    checkArity(name, arguments, 1);
+                return split(name, string, arguments.isEmpty() ? null : arguments.get(0));
+            default:
+                return object(interpreter, string, name, arguments);
+        }
+    }
+
+    private static Object regexp(Interpreter interpreter, RubyRegexp regexp, Token name, List<Object> arguments) {
+        switch (name.lexeme) {
+            case "=~":
+                checkArity(name, arguments, 1);
+                return matchIndex(name, regexp, arguments.get(0));
+            case "match":
+                checkArity(name, arguments, 1);
+                return arguments.get(0) == null ? null : regexp.match(checkString(name, arguments.get(0)), 0);
+            case "match?":
+            case "===":
+                checkArity(name, arguments, 1);
+                return arguments.get(0) instanceof RubyString && regexp.matches((RubyString) arguments.get(0));
+            case "source":
+                checkArity(name, arguments, 0);
+                return new RubyString(regexp.source);
+            default:
+                return object(interpreter, regexp, name, arguments);
+        }
+    }
+
+    private static Object matchData(Interpreter interpreter, RubyMatch match, Token name, List<Object> arguments) {
+        switch (name.lexeme) {
+            case "captures":
+                checkArity(name, arguments, 0);
+                return match.captures();
+            case "to_a":
+                checkArity(name, arguments, 0);
+                RubyArray groups = new RubyArray(match.size());
+                for (int group = 0; group < match.size(); group++)
+                    groups.push(match.group(group));
+                return groups;
+            case "pre_match":
+                checkArity(name, arguments, 0);
+                return match.preMatch();
+            case "post_match":
+                checkArity(name, arguments, 0);
+                return match.postMatch();
+            case "begin":
+                checkArity(name, arguments, 1);
+                if (!(arguments.get(0) instanceof Long) || (Long) arguments.get(0) < 0 || (Long) arguments.get(0) >= match.size())
+                    throw new RuntimeError(name, "index " + arguments.get(0) + " out of matches");
+                return Arithmetic.box(match.begin((Long) arguments.get(0)));
+            case "size":
+            case "length":
+                checkArity(name, arguments, 0);
+                return Arithmetic.box(match.size());
+            default:
+                return object(interpreter, match, name, arguments);
+        }
+    }
+    // string =~ regexp, the index of the first match or nil
+    static Object matchIndex(Token token, Object left, Object right) {
+        if (left instanceof RubyRegexp) {
+            Object swap = left;
+            left = right;
+            right = swap;
+        }
+        if (left == null)
+            return null;
+        if (!(left instanceof RubyString) || !(right instanceof RubyRegexp)) {
+            throw new RuntimeError(token, "wrong argument type " + typeName(right) + " (expected Regexp)");
+        }
+        RubyMatch match = ((RubyRegexp) right).match((RubyString) left, 0);
+        return match == null ? null : Arithmetic.box(match.begin(0));
+    }
+    // match takes a Regexp or a String holding a pattern
+    private static RubyRegexp toRegexp(Token name, Object pattern) {
+        if (pattern instanceof RubyRegexp)
+            return (RubyRegexp) pattern;
+        return RubyRegexp.compile(name, checkString(name, pattern).toString(), "");
+    }
+    // sub, gsub, scan and split take a Regexp or a String matched as it is
+    private static RubyRegexp pattern(Token name, Object pattern) {
+        if (pattern instanceof RubyRegexp)
+            return (RubyRegexp) pattern;
+        return RubyRegexp.quote(name, checkString(name, pattern));
+    }
+    // every match, or the groups of every match when the pattern has groups
+    private static RubyArray scan(RubyRegexp regexp, RubyString string) {
+        RubyArray matches = new RubyArray();
+        int from = 0;
+        RubyMatch match;
+        while ((match = regexp.match(string, from)) != null) {
+            matches.push(match.size() == 1 ? match.group(0) : match.captures());
+            int end = match.begin(0) + match.toString().length();
+            from = end == match.begin(0) ? end + 1 : end;
+        }
+        return matches;
+    }
+    // split on whitespace by default, trailing empty fields are dropped as in ruby
+    private static RubyArray split(Token name, RubyString string, Object separator) {
+        String[] fields;
+        if (separator == null || (separator instanceof RubyString && separator.toString().equals(" "))) {
+            String trimmed = string.toString().strip();
+            fields = trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+        } else {
+            fields = pattern(name, separator).pattern.split(string);
+        }
+        RubyArray array = new RubyArray(fields.length);
+        for (String field : fields) {
+            array.push(new RubyString(field));
+        }
+        return array;
+    }
+
+    private static Object symbol(Interpreter interpreter, Symbol symbol, Token name, List<Object> arguments) {
+        switch (name.lexeme) {
+            case "length":
+            case "size":
+                checkArity(name, arguments, 0);
+                return Arithmetic.box(symbol.name.length());
+            case "to_sym":
+                checkArity(name, arguments, 0);
+                return symbol;
+            case "to_s":
+                checkArity(name, arguments, 0);
+                return new RubyString(symbol.name);
+            default:
+                return object(interpreter, symbol, name, arguments);
+        }
+    }
+
+    private static Object array(Interpreter interpreter, RubyArray array, Token name, List<Object> arguments) {
+        switch (name.lexeme) {
+            case "length":
+            case "size":
+                checkArity(name, arguments, 0);
+                return Arithmetic.box(array.size());
+            case "empty?":
+                checkArity(name, arguments, 0);
+                return array.size() == 0;
+            case "push":
+                for (Object argument : arguments)
+                    array.push(argument);
+                return array;
+            case "pop":
+                checkArity(name, arguments, 0);
+                return array.pop();
+            case "first":
+                checkArity(name, arguments, 0);
+                return array.get(0);
+            case "last":
+                checkArity(name, arguments, 0);
+                return array.get(-1);
+            case "include?":
+                checkArity(name, arguments, 1);
+                return array.includes(arguments.get(0));
+            case "sum":
+                checkArity(name, arguments, 0);
+                return array.sum(name);
+            case "min":
+            case "max":
+                checkArity(name, arguments, 0);
+                return extreme(name, array, name.lexeme.equals("max"));
+            case "reverse":
+                checkArity(name, arguments, 0);
+                return array.reverse();
+            case "join":
+                if (arguments.isEmpty())
+                    return array.join("");
+                checkArity(name, arguments, 1);
+                return array.join(checkString(name, arguments.get(0)).toString());
+            case "to_a":
+                checkArity(name, arguments, 0);
+                return array;
+            default:
+                return object(interpreter, array, name, arguments);
+        }
+    }
+
+    // the smallest or largest element, compared with <, nil for an empty array
+    private static Object extreme(Token name, RubyArray array, boolean max) {
+        if (array.size() == 0)
+            return null;
+        Object best = array.at(0);
+        for (int i = 1; i < array.size(); i++) {
+            Object value = array.at(i);
+            Object left = max ? best : value;
+            Object right = max ? value : best;
+            if (Boolean.TRUE.equals(Interpreter.binaryOperation(TokenType.LESS, name, left, right)))
+                best = value;
+        }
+        return best;
+    }
+
+    private static Object hash(Interpreter interpreter, RubyHash hash, Token name, List<Object> arguments) {
+        switch (name.lexeme) {
+            case "length":
+            case "size":
+                checkArity(name, arguments, 0);
+                return Arithmetic.box(hash.size());
+            case "empty?":
+                checkArity(name, arguments, 0);
+                return hash.size() == 0;
+            case "key?":
+            case "has_key?":
+            case "include?":
+            case "member?":
+                checkArity(name, arguments, 1);
+                return hash.containsKey(arguments.get(0));
+            case "fetch":
+                if (arguments.size() == 2 && !hash.containsKey(arguments.get(0)))
+                    return arguments.get(1);
+                checkArity(name, arguments, 1);
+                if (!hash.containsKey(arguments.get(0)))
+                    throw new RuntimeError(name, "key not found: " + inspect(arguments.get(0)) + " (KeyError)");
+                return hash.get(arguments.get(0));
+            case "delete":
+                checkArity(name, arguments, 1);
+                return hash.delete(arguments.get(0));
+            case "keys":
+                checkArity(name, arguments, 0);
+                return hash.keys();
+            case "values":
+                checkArity(name, arguments, 0);
+                return hash.values();
+            case "to_a":
+                checkArity(name, arguments, 0);
+                return hash.toArray();
+            default:
+                return object(interpreter, hash, name, arguments);
+        }
+    }
+
+    private static RubyString checkString(Token name, Object value) {
+        if (value instanceof RubyString)
+            return (RubyString) value;
+        throw new RuntimeError(name, "no implicit conversion of " + typeName(value) + " into String");
+    }
+
+    static void checkArity(Token name, List<Object> arguments, int arity) {
+        if (arguments.size() != arity) {
+            throw new RuntimeError(name, "wrong number of arguments (given "
+                    + arguments.size() + ", expected " + arity + ")");
+        }
+    }
+    // ==, numbers compare by value across Integer and Float, arrays element by element
+    static boolean valueEquals(Object a, Object b) {
+        if (a == null && b == null)
+            return true;
+        if (a == null || b == null)
+            return false;
+        if (a instanceof Double && Arithmetic.isInteger(b))
+            return (Double) a == ((Number) b).doubleValue();
+        if (b instanceof Double && Arithmetic.isInteger(a))
+            return (Double) b == ((Number) a).doubleValue();
+        if (a instanceof RubyArray && b instanceof RubyArray) {
+            RubyArray left = (RubyArray) a;
+            RubyArray right = (RubyArray) b;
+            if (left.size() != right.size())
+                return false;
+            for (int i = 0; i < left.size(); i++) {
+                if (!valueEquals(left.at(i), right.at(i)))
+                    return false;
+            }
+            return true;
+        }
+        return a.equals(b);
+    }
+    // the + operator, for code outside the interpreter that adds values
+    static Object add(Token token, Object left, Object right) {
+        return Interpreter.binaryOperation(TokenType.PLUS, token, left, right);
+    }
+    // to_s, as used by puts and join
+    static String stringify(Object value) {
+        if (value instanceof Double)
+            return NumberFormatter.toString((Double) value);
+        return value == null ? "" : value.toString();
+    }
+    // inspect, as used by p and when printing arrays
+    static String inspect(Object value) {
+        if (value == null)
+            return "nil";
+        if (value instanceof RubyString) {
+            StringBuilder quoted = new StringBuilder("\"");
+            RubyString string = (RubyString) value;
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                switch (c) {
+                    case '"':
+                        quoted.append("\\\"");
+                        break;
+                    case '\\':
+                        quoted.append("\\\\");
+                        break;
+                    case '\n':
+                        quoted.append("\\n");
+                        break;
+                    case '\t':
+                        quoted.append("\\t");
+                        break;
+                    default:
+                        quoted.append(c);
+                }
+            }
+            return quoted.append('"').toString();
+        }
+        if (value instanceof Symbol)
+            return ((Symbol) value).inspect();
+        if (value instanceof RubyInstance)
+            return ((RubyInstance) value).inspect();
+        if (value instanceof RubyMatch)
+            return "#<MatchData " + inspect(new RubyString(value.toString())) + ">";
+        return stringify(value);
+    }
+    // the ruby class name of a value, used in error messages
+    static String typeName(Object value) {
+        if (value == null)
+            return "NilClass";
+        if (value instanceof Long || value instanceof BigInteger)
+            return "Integer";
+        if (value instanceof Double)
+            return "Float";
+        if (value instanceof RubyString)
+            return "String";
+        if (value instanceof Boolean)
+            return (Boolean) value ? "TrueClass" : "FalseClass";
+        if (value instanceof RubyRange)
+            return "Range";
+        if (value instanceof RubyArray)
+            return "Array";
+        if (value instanceof RubyHash)
+            return "Hash";
+        if (value instanceof Symbol)
+            return "Symbol";
+        if (value instanceof RubyRegexp)
+            return "Regexp";
+        if (value instanceof RubyMatch)
+            return "MatchData";
+        if (value instanceof RubyIO)
+            return ((RubyIO) value).isFile ? "File" : "IO";
+        if (value instanceof CsvWriter)
+            return "CSV";
+        if (value instanceof RubyClass)
+            return "Class";
+        if (value instanceof RubyModule)
+            return "Module";
+        if (value instanceof RubyInstance)
+            return ((RubyInstance) value).klass.name;
+        if (value instanceof RubyCallable)
+            return "Method";
+        return value.getClass().getSimpleName();
+    }
+}
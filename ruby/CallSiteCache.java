@@ -0,0 +1,44 @@
+package ruby;
+
+/*
+ * Inline cache of a method call site
+ * Remembers the method found for each receiver class seen at the site,
+ * stamped with the class version at the time. The first entry is the
+ * monomorphic case, up to POLYMORPHIC classes are kept, classes seen after
+ * that are looked up every time. Misses are cached too, so a name that is
+ * not a method (a plain function called from inside a method) is only
+ * searched for once per class.
+ */
+final class CallSiteCache {
+    private static final int POLYMORPHIC = 4;
+
+    private RubyClass[] classes;
+    private int[] versions;
+    private RubyCallable[] methods;
+    private int size;
+
+    RubyCallable lookup(RubyClass klass, Symbol name) {
+        for (int i = 0; i < size; i++) {
+            if (classes[i] == klass) {
+                if (versions[i] != klass.version) {
+                    methods[i] = klass.findMethod(name);
+                    versions[i] = klass.version;
+                }
+                return methods[i];
+            }
+        }
+        RubyCallable method = klass.findMethod(name);
+        if (size < POLYMORPHIC) {
+            if (classes == null) {
+                classes = new RubyClass[POLYMORPHIC];
+                versions = new int[POLYMORPHIC];
+                methods = new RubyCallable[POLYMORPHIC];
+            }
+            classes[size] = klass;
+            versions[size] = klass.version;
+            methods[size] = method;
+            size++;
+        }
+        return method;
+    }
+}
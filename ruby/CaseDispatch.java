@@ -0,0 +1,130 @@
+package ruby;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * A compiled case/when
+ * When every when value is a literal or an integer range with literal ends
+ * the branch is picked without evaluating the arms: literals go into a hash
+ * table from value to branch, ranges are cut into disjoint intervals sorted
+ * by their start and found by binary search. An earlier arm always wins, as
+ * if the arms were tried in order. Any other when value (a variable, a
+ * regex, a class) leaves the statement to the plain in order === walk.
+ */
+final class CaseDispatch {
+    // select could not decide, try the arms one by one
+    static final int SEQUENTIAL = -2;
+
+    private final Map<Object, Integer> literals = new HashMap<>();
+    private long[] starts = new long[0];
+    private long[] ends = new long[0];
+    private int[] branches = new int[0];
+
+    private CaseDispatch() {
+    }
+    // the table for a case statement, null when some arm is not constant
+    static CaseDispatch compile(Stmt.Case stmt) {
+        CaseDispatch dispatch = new CaseDispatch();
+        List<long[]> intervals = new ArrayList<>();
+        for (int branch = 0; branch < stmt.conditions.size(); branch++) {
+            for (Expr value : stmt.conditions.get(branch)) {
+                if (value instanceof Expr.Literal && !(((Expr.Literal) value).value instanceof RubyRegexp)) {
+                    dispatch.literals.putIfAbsent(key(((Expr.Literal) value).value), branch);
+                } else if (isIntegerRange(value)) {
+                    Expr.Range range = (Expr.Range) value;
+                    long start = (Long) ((Expr.Literal) range.left).value;
+                    long end = (Long) ((Expr.Literal) range.right).value;
+                    if (!range.inclusive) {
+                        if (end == Long.MIN_VALUE)
+                            continue;
+                        end--;
+                    }
+                    if (start <= end)
+                        addUncovered(intervals, start, end, branch);
+                } else {
+                    return null;
+                }
+            }
+        }
+        intervals.sort((a, b) -> Long.compare(a[0], b[0]));
+        dispatch.starts = new long[intervals.size()];
+        dispatch.ends = new long[intervals.size()];
+        dispatch.branches = new int[intervals.size()];
+        for (int i = 0; i < intervals.size(); i++) {
+            dispatch.starts[i] = intervals.get(i)[0];
+            dispatch.ends[i] = intervals.get(i)[1];
+            dispatch.branches[i] = (int) intervals.get(i)[2];
+        }
+        return dispatch;
+    }
+
+    private static boolean isIntegerRange(Expr value) {
+        if (!(value instanceof Expr.Range))
+            return false;
+        Expr.Range range = (Expr.Range) value;
+        return range.left instanceof Expr.Literal && ((Expr.Literal) range.left).value instanceof Long
+                && range.right instanceof Expr.Literal && ((Expr.Literal) range.right).value instanceof Long;
+    }
+    // adds the parts of start..end no earlier arm covers, so the intervals stay disjoint
+    private static void addUncovered(List<long[]> intervals, long start, long end, int branch) {
+        List<long[]> gaps = new ArrayList<>();
+        gaps.add(new long[] { start, end });
+        for (long[] covered : intervals) {
+            List<long[]> left = new ArrayList<>();
+            for (long[] gap : gaps) {
+                if (covered[1] < gap[0] || covered[0] > gap[1]) {
+                    left.add(gap);
+                    continue;
+                }
+                if (gap[0] < covered[0])
+                    left.add(new long[] { gap[0], covered[0] - 1 });
+                if (gap[1] > covered[1])
+                    left.add(new long[] { covered[1] + 1, gap[1] });
+            }
+            gaps = left;
+        }
+        for (long[] gap : gaps) {
+            intervals.add(new long[] { gap[0], gap[1], branch });
+        }
+    }
+    /*
+     * literals and the value are compared in one form: strings by their
+     * characters and floats with an integer value as that integer, as 1 == 1.0
+     */
+    private static Object key(Object value) {
+        if (value instanceof String)
+            return new RubyString((String) value);
+        if (value instanceof Double) {
+            double number = (Double) value;
+            if (number == Math.rint(number) && Math.abs(number) < 0x1p63)
+                return Arithmetic.box((long) number);
+        }
+        if (value instanceof BigInteger)
+            return Arithmetic.normalize((BigInteger) value);
+        return value;
+    }
+    // the branch for value, -1 for the else branch
+    int select(Object value) {
+        Object key = key(value);
+        Integer literal = literals.get(key);
+        int branch = literal == null ? -1 : literal;
+        if (starts.length == 0)
+            return branch;
+        if (!(key instanceof Long)) {
+            // 1.5 can still be in 1..2, let === decide
+            return value instanceof Double ? SEQUENTIAL : branch;
+        }
+        long x = (Long) key;
+        int i = Arrays.binarySearch(starts, x);
+        if (i < 0)
+            i = -i - 2;
+        if (i >= 0 && x <= ends[i] && (branch < 0 || branches[i] < branch))
+            branch = branches[i];
+        return branch;
+    }
+}
@@ -0,0 +1,161 @@
+package ruby;
+
+import java.util.Arrays;
+
+/*
+ * How a CSV file is read and written, from the options of a CSV call
+ *   col_sep: ";"             the separator, one ASCII character, "," by default
+ *   converters: :numeric     unquoted fields that are numbers become Integers
+ *                            and Floats, :integer and :float for one kind
+ *   columns: [0, 3]          only these columns, in this order, the others
+ *                            are skipped without making a value for them
+ * An Array of columns alone, CSV.foreach(path, [0, 3]), is a projection too.
+ *
+ * A field is quoted when written if it holds the separator, a quote or a
+ * line break, an empty String is written as "" so it reads back apart from
+ * nil, which is written as nothing.
+ */
+final class CsvFormat {
+    static final CsvFormat DEFAULT = new CsvFormat((byte) ',', false, false, null);
+
+    private static final Symbol COL_SEP = Symbol.intern("col_sep");
+    private static final Symbol CONVERTERS = Symbol.intern("converters");
+    private static final Symbol COLUMNS = Symbol.intern("columns");
+
+    final byte separator;
+    private final String separatorText;
+    final boolean integers;
+    final boolean floats;
+    // column -> its place in the row, -1 for a skipped column, null for all columns
+    private final int[] slots;
+    // the length of a projected row
+    final int width;
+
+    private CsvFormat(byte separator, boolean integers, boolean floats, int[] columns) {
+        this.separator = separator;
+        this.separatorText = Character.toString((char) separator);
+        this.integers = integers;
+        this.floats = floats;
+        if (columns == null) {
+            slots = null;
+            width = 0;
+            return;
+        }
+        int last = -1;
+        for (int column : columns)
+            last = Math.max(last, column);
+        slots = new int[last + 1];
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < columns.length; i++) {
+            if (slots[columns[i]] >= 0)
+                throw new RuntimeError("column " + columns[i] + " given twice");
+            slots[columns[i]] = i;
+        }
+        width = columns.length;
+    }
+    // the format an options argument asks for, nil for the defaults
+    static CsvFormat of(Object options) {
+        if (options == null)
+            return DEFAULT;
+        if (options instanceof RubyArray)
+            return new CsvFormat((byte) ',', false, false, columns(options));
+        if (!(options instanceof RubyHash))
+            throw new RuntimeError("no implicit conversion of " + Builtins.typeName(options) + " into Hash");
+        RubyHash hash = (RubyHash) options;
+        byte separator = ',';
+        boolean integers = false;
+        boolean floats = false;
+        int[] columns = null;
+        for (int entry = hash.next(-1); entry >= 0; entry = hash.next(entry)) {
+            Object key = hash.keyAt(entry);
+            Object value = hash.valueAt(entry);
+            if (key == COL_SEP) {
+                separator = separator(value);
+            } else if (key == CONVERTERS) {
+                Object converter = value instanceof RubyArray && ((RubyArray) value).size() == 1
+                        ? ((RubyArray) value).at(0) : value;
+                String name = converter instanceof Symbol ? converter.toString() : "";
+                integers = name.equals("numeric") || name.equals("all") || name.equals("integer");
+                floats = name.equals("numeric") || name.equals("all") || name.equals("float");
+                if (!integers && !floats)
+                    throw new RuntimeError("unknown converter " + Builtins.inspect(value));
+            } else if (key == COLUMNS) {
+                columns = value == null ? null : columns(value);
+            } else {
+                throw new RuntimeError("unknown keyword: " + Builtins.inspect(key));
+            }
+        }
+        return new CsvFormat(separator, integers, floats, columns);
+    }
+
+    private static byte separator(Object value) {
+        if (value instanceof RubyString && value.toString().length() == 1) {
+            char c = value.toString().charAt(0);
+            if (c < 0x80 && c != '"' && c != '\n' && c != '\r')
+                return (byte) c;
+        }
+        throw new RuntimeError("col_sep must be one ASCII character other than a quote or a line break, not "
+                + Builtins.inspect(value));
+    }
+
+    private static int[] columns(Object value) {
+        if (!(value instanceof RubyArray))
+            throw new RuntimeError("no implicit conversion of " + Builtins.typeName(value) + " into Array");
+        RubyArray array = (RubyArray) value;
+        int[] columns = new int[array.size()];
+        for (int i = 0; i < columns.length; i++) {
+            Object column = array.at(i);
+            if (!(column instanceof Long) || (Long) column < 0 || (Long) column >= Integer.MAX_VALUE)
+                throw new RuntimeError("a column is an Integer from 0, not " + Builtins.inspect(column));
+            columns[i] = (int) (long) (Long) column;
+        }
+        return columns;
+    }
+
+    boolean projects() {
+        return slots != null;
+    }
+    // where column goes in a projected row, -1 when it is skipped
+    int slot(int column) {
+        return column < slots.length ? slots[column] : -1;
+    }
+    // the row as one line, with its "\n", into the sink without building the line first
+    void write(OutputSink sink, RubyArray row) {
+        for (int i = 0; i < row.size(); i++) {
+            if (i > 0)
+                sink.write(separatorText);
+            Object field = row.at(i);
+            if (field instanceof Long)
+                sink.write((long) (Long) field);
+            else if (field instanceof Double)
+                sink.write((double) (Double) field);
+            else if (field != null)
+                sink.write(field(field));
+        }
+        sink.newline();
+    }
+    // CSV.generate_line, the same line as a String
+    String line(RubyArray row) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < row.size(); i++) {
+            if (i > 0)
+                line.append((char) separator);
+            Object field = row.at(i);
+            if (field != null)
+                line.append(field(field));
+        }
+        return line.append('\n').toString();
+    }
+    // the to_s of a field, quoted when it has to be
+    private CharSequence field(Object value) {
+        CharSequence text = value instanceof RubyString ? (RubyString) value : Builtins.stringify(value);
+        if (text.length() == 0)
+            return "\"\"";
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == separator || c == '"' || c == '\n' || c == '\r')
+                return '"' + text.toString().replace("\"", "\"\"") + '"';
+        }
+        return text;
+    }
+}
@@ -0,0 +1,97 @@
+package ruby;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * CSV, reading and writing comma separated values
+ * The options of the calls that take them are described in CsvFormat.
+ * CSV.foreach and CSV.open with a block run as loops in the interpreter,
+ * see Interpreter.iterate.
+ */
+final class CsvModule {
+    private CsvModule() {
+    }
+    // every row of the text
+    @Native
+    static RubyArray parse(RubyString text) {
+        return parse(text, null);
+    }
+
+    @Native
+    static RubyArray parse(RubyString text, Object options) {
+        return rows(reader(text, options));
+    }
+    // the first row of the text, nil for an empty one
+    @Native("parse_line")
+    static RubyArray parseLine(RubyString text) {
+        return parseLine(text, null);
+    }
+
+    @Native("parse_line")
+    static RubyArray parseLine(RubyString text, Object options) {
+        return reader(text, options).next();
+    }
+    // every row of a file, read through the mapped file like CSV.foreach
+    @Native
+    static RubyArray read(Interpreter interpreter, RubyString path) {
+        return read(interpreter, path, null);
+    }
+
+    @Native
+    static RubyArray read(Interpreter interpreter, RubyString path, Object options) {
+        CsvFormat format = CsvFormat.of(options);
+        RubyIO file = interpreter.open(path.toString(), "r");
+        try {
+            return rows(new CsvReader(file.lines(), format, file.path));
+        } finally {
+            interpreter.close(file);
+        }
+    }
+
+    @Native("generate_line")
+    static String generateLine(Object row) {
+        return generateLine(row, null);
+    }
+
+    @Native("generate_line")
+    static String generateLine(Object row, Object options) {
+        if (!(row instanceof RubyArray))
+            throw new RuntimeError("no implicit conversion of " + Builtins.typeName(row) + " into Array");
+        return CsvFormat.of(options).line((RubyArray) row);
+    }
+    // CSV.open(path, mode) without a block, the rows go out once it is closed or flushed
+    @Native
+    static CsvWriter open(Interpreter interpreter, RubyString path, RubyString mode) {
+        return open(interpreter, path, mode, null);
+    }
+
+    @Native
+    static CsvWriter open(Interpreter interpreter, RubyString path, RubyString mode, Object options) {
+        CsvFormat format = CsvFormat.of(options);
+        return new CsvWriter(interpreter.open(path.toString(), mode.toString()), format);
+    }
+    // CSV.new(io), rows written to an open File or STDOUT
+    @Native("new")
+    static CsvWriter create(Object io) {
+        return create(io, null);
+    }
+
+    @Native("new")
+    static CsvWriter create(Object io, Object options) {
+        if (!(io instanceof RubyIO))
+            throw new RuntimeError("no implicit conversion of " + Builtins.typeName(io) + " into IO");
+        return new CsvWriter((RubyIO) io, CsvFormat.of(options));
+    }
+
+    private static CsvReader reader(RubyString text, Object options) {
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        return new CsvReader(LineReader.of(bytes), CsvFormat.of(options), "<string>");
+    }
+
+    private static RubyArray rows(CsvReader reader) {
+        RubyArray rows = new RubyArray();
+        for (RubyArray row = reader.next(); row != null; row = reader.next())
+            rows.push(row);
+        return rows;
+    }
+}
@@ -0,0 +1,223 @@
+package ruby;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * The records of a CSV file, one row at a time
+ * Fields are found in the bytes of the line where the LineReader left it in
+ * its window, mapped from the file, and only become values once they are
+ * complete: an unquoted field is decoded straight from the window, or with
+ * converters parsed as a number from its digits without a String in
+ * between, and a skipped column is only scanned over. Separators and quotes
+ * are ASCII, so scanning bytes is safe for UTF-8 text.
+ * A quoted field may hold separators, "" for a quote and line breaks, it is
+ * then gathered in a buffer of its own as it can go on past the line and so
+ * past the window. A blank line is an empty row, a missing field is nil.
+ */
+final class CsvReader {
+    private final LineReader lines;
+    private final CsvFormat format;
+    private final String name;
+    // the record being read, at..end of the current line without its line break
+    private int at;
+    private int end;
+    private long lineNumber;
+    // where the record started, for the errors
+    private long recordLine;
+    // a quoted field that could not be decoded from the window in one piece
+    private byte[] gathered = new byte[64];
+    private int gatheredLength;
+
+    CsvReader(LineReader lines, CsvFormat format, String name) {
+        this.lines = lines;
+        this.format = format;
+        this.name = name;
+    }
+    // the next row, null at the end
+    RubyArray next() {
+        try {
+            return record();
+        } catch (IOException e) {
+            throw RubyIO.error(e, name);
+        }
+    }
+
+    private RubyArray record() throws IOException {
+        if (!nextLine())
+            return null;
+        recordLine = lineNumber;
+        RubyArray row = new RubyArray();
+        Object[] projected = format.projects() ? new Object[format.width] : null;
+        if (at == end)
+            return row;
+        for (int column = 0;; column++) {
+            int slot = projected == null ? column : format.slot(column);
+            Object value = at < end && lines.byteAt(at) == '"' ? quoted(slot >= 0) : unquoted(slot >= 0);
+            if (projected == null)
+                row.push(value);
+            else if (slot >= 0)
+                projected[slot] = value;
+            if (at == end)
+                break;
+            // the separator, a field follows even if the line ends here
+            at++;
+        }
+        return projected == null ? row : fill(row, projected);
+    }
+
+    private static RubyArray fill(RubyArray row, Object[] values) {
+        for (Object value : values)
+            row.push(value);
+        return row;
+    }
+
+    private boolean nextLine() throws IOException {
+        if (!lines.advance())
+            return false;
+        lineNumber++;
+        at = lines.lineStart();
+        end = lines.lineEnd();
+        if (end > at && lines.byteAt(end - 1) == '\n')
+            end--;
+        if (end > at && lines.byteAt(end - 1) == '\r')
+            end--;
+        return true;
+    }
+
+    private Object unquoted(boolean wanted) {
+        int start = at;
+        byte separator = format.separator;
+        for (; at < end; at++) {
+            byte b = lines.byteAt(at);
+            if (b == separator)
+                break;
+            if (b == '"')
+                throw error("Illegal quoting");
+        }
+        if (!wanted || at == start)
+            return null;
+        if (format.integers || format.floats) {
+            Object number = number(start, at);
+            if (number != null)
+                return number;
+        }
+        return lines.decode(start, at);
+    }
+    // the field from after its opening quote to its closing one
+    private Object quoted(boolean wanted) throws IOException {
+        int from = ++at;
+        boolean split = false;
+        gatheredLength = 0;
+        while (true) {
+            while (at < end && lines.byteAt(at) != '"')
+                at++;
+            if (at < end) {
+                if (at + 1 < end && lines.byteAt(at + 1) == '"') {
+                    // "" is one quote, the field has to be put together
+                    if (wanted)
+                        gather(from, at + 1);
+                    split = true;
+                    at += 2;
+                    from = at;
+                    continue;
+                }
+                int close = at++;
+                if (at < end && lines.byteAt(at) != format.separator)
+                    throw error("Any value after quoted field isn't allowed");
+                if (!wanted)
+                    return null;
+                if (!split)
+                    return lines.decode(from, close);
+                gather(from, close);
+                return new RubyString(new String(gathered, 0, gatheredLength, StandardCharsets.UTF_8));
+            }
+            // the field goes on on the next line, with the line break
+            if (wanted)
+                gather(from, lines.lineEnd());
+            split = true;
+            if (!nextLine())
+                throw error("Unclosed quoted field");
+            from = at;
+        }
+    }
+
+    private void gather(int from, int to) {
+        int length = to - from;
+        if (gatheredLength + length > gathered.length) {
+            long grown = Math.max(2L * gathered.length, (long) gatheredLength + length);
+            if (grown > Integer.MAX_VALUE - 8)
+                throw error("field too long");
+            gathered = Arrays.copyOf(gathered, (int) grown);
+        }
+        for (int i = from; i < to; i++)
+            gathered[gatheredLength++] = lines.byteAt(i);
+    }
+    /*
+     * An Integer or a Float read from the digits in the window, null when the
+     * field is not one the converters take. Integers up to 18 digits are
+     * summed up in a long, longer ones go through BigInteger.
+     */
+    private Object number(int from, int to) {
+        int i = from;
+        byte first = lines.byteAt(i);
+        boolean negative = first == '-';
+        if (negative || first == '+')
+            i++;
+        int digits = i;
+        long value = 0;
+        for (; i < to; i++) {
+            byte b = lines.byteAt(i);
+            if (b < '0' || b > '9')
+                break;
+            value = value * 10 + (b - '0');
+        }
+        if (i == digits)
+            return null;
+        if (i == to) {
+            if (!format.integers)
+                return format.floats ? Double.parseDouble(ascii(from, to)) : null;
+            if (to - digits <= 18)
+                return Arithmetic.box(negative ? -value : value);
+            return Arithmetic.normalize(new BigInteger(ascii(from, to)));
+        }
+        if (!format.floats || !isFloat(i, to))
+            return null;
+        return Double.parseDouble(ascii(from, to));
+    }
+    // the rest of a float after its whole digits, .digits and e-digits, both optional
+    private boolean isFloat(int i, int to) {
+        if (lines.byteAt(i) == '.') {
+            int digits = ++i;
+            while (i < to && isDigit(lines.byteAt(i)))
+                i++;
+            if (i == digits)
+                return false;
+        }
+        if (i < to && (lines.byteAt(i) == 'e' || lines.byteAt(i) == 'E')) {
+            i++;
+            if (i < to && (lines.byteAt(i) == '-' || lines.byteAt(i) == '+'))
+                i++;
+            int digits = i;
+            while (i < to && isDigit(lines.byteAt(i)))
+                i++;
+            if (i == digits)
+                return false;
+        }
+        return i == to;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private String ascii(int from, int to) {
+        return lines.decode(from, to).toString();
+    }
+
+    private RuntimeError error(String message) {
+        return new RuntimeError(message + " in line " + recordLine + ". (CSV::MalformedCSVError)");
+    }
+}
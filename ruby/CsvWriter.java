@@ -0,0 +1,33 @@
+package ruby;
+
+/*
+ * A CSV open for writing, CSV.open(path, "w") or CSV.new(STDOUT)
+ * Rows are formatted field by field straight into the output sink of the
+ * IO, numbers included, so writing a row makes no String for the line.
+ */
+final class CsvWriter {
+    final RubyIO io;
+    private final CsvFormat format;
+
+    CsvWriter(RubyIO io, CsvFormat format) {
+        // fails here on a file opened for reading, not at the first row
+        io.writer();
+        this.io = io;
+        this.format = format;
+    }
+    // csv << row
+    CsvWriter add(Object row) {
+        if (!(row instanceof RubyArray))
+            throw new RuntimeError("no implicit conversion of " + Builtins.typeName(row) + " into Array");
+        OutputSink sink = io.writer();
+        format.write(sink, (RubyArray) row);
+        // STDOUT on a terminal shows the row now, a file waits for a full buffer
+        sink.done();
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "#<CSV io:" + io + ">";
+    }
+}
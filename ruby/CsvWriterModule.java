@@ -0,0 +1,35 @@
+package ruby;
+
+/*
+ * Native methods of a CSV open for writing, the receiver is the first parameter
+ */
+final class CsvWriterModule {
+    private CsvWriterModule() {
+    }
+    // csv << row, returns the CSV so rows can be chained
+    @Native("<<")
+    static CsvWriter add(CsvWriter self, Object row) {
+        return self.add(row);
+    }
+
+    @Native("add_row")
+    static CsvWriter addRow(CsvWriter self, Object row) {
+        return self.add(row);
+    }
+
+    @Native
+    static CsvWriter flush(CsvWriter self) {
+        self.io.writer().flush();
+        return self;
+    }
+
+    @Native
+    static void close(Interpreter interpreter, CsvWriter self) {
+        interpreter.close(self.io);
+    }
+
+    @Native("closed?")
+    static boolean closed(CsvWriter self) {
+        return self.io.isClosed();
+    }
+}
@@ -1,37 +1,56 @@
 package ruby;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 class Environment {
-    private final Map<String, Object> values = new HashMap<>();
+    static final Object UNDEFINED = new Object();
+    // open addressing table keyed by symbol id, names are never hashed as strings
+    private Symbol[] names = new Symbol[8];
+    private Object[] values = new Object[8];
+    private int count;
     final Environment enclosing;// for linking scopes together
+    // set once a function closes over this scope, it can not be reused after that
+    boolean captured = false;
+    // the scope of a block, x = value reaches an x of the scopes around it
+    final boolean block;
 // two constructors first one is is for global scope , second one for remaining scopes as we  need to link it with prviously existing scope
     Environment() {
-        enclosing = null;
+        this(null, false);
     }
 
     Environment(Environment enclosing) {
+        this(enclosing, false);
+    }
+
+    Environment(Environment enclosing, boolean block) {
         this.enclosing = enclosing;
+        this.block = block;
     }
 // this method returns the value of variables present in existing and background scope throws error if varible is not defined or assigned previosly
     Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
-        if (enclosing != null)
-            return enclosing.get(name);
-        if (name.lexeme.charAt(0) == '$') {
-            return null;
-        }
+        Object value = lookup(name.symbol());
+        if (value != UNDEFINED)
+            return value;
         throw new RuntimeError(name,
                 "Undefined variable '" + name.lexeme + "'.");
     }
+// the value bound to name in this or an enclosing scope, UNDEFINED when there is none
+    Object lookup(Symbol name) {
+        for (Environment scope = this; scope != null; scope = scope.enclosing) {
+            int slot = scope.slot(name);
+            if (scope.names[slot] != null)
+                return scope.values[slot];
+        }
+        return UNDEFINED;
+    }
 // this method assign the value to previously defined variables and thros error when it is not previously assigned
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme) && !(name.lexeme.charAt(0) >= 'A' && name.lexeme.charAt(0) <= 'Z')) {
-            values.put(name.lexeme, value);
-            if (enclosing != null) {
+        Symbol symbol = name.symbol();
+        int slot = slot(symbol);
+        if (names[slot] != null && !symbol.isConstant) {
+            values[slot] = value;
+            symbol.version++;
+            if (enclosing != null && enclosing.isDefined(symbol)) {
                 enclosing.assign(name, value);
             }
             return;
@@ -45,21 +64,97 @@ class Environment {
         throw new RuntimeError(name,
                 "Undefined variable '" + name.lexeme + "'.");
     }
-//defines the variable for first assignment and throws error when constant is not defined static scopes or if it is already defined
-    void define(String name, Object value) {
-        if (name.charAt(0) == '$' && enclosing != null) {
-            values.put(name, value);
-            enclosing.define(name, value);
+// true if the name is bound in this scope itself
+    boolean has(Symbol name) {
+        return names[slot(name)] != null;
+    }
+// true if the name is bound in this scope or any scope around it
+    private boolean isDefined(Symbol name) {
+        for (Environment scope = this; scope != null; scope = scope.enclosing) {
+            if (scope.names[scope.slot(name)] != null)
+                return true;
+        }
+        return false;
+    }
+// forgets every local so a tail call can rebind the parameters in the same frame
+    void clear() {
+        for (Symbol name : names) {
+            if (name != null)
+                name.version++;
         }
-        if (values.containsKey(name) && (name.charAt(0) >= 'A' && name.charAt(0) <= 'Z')) {
+        Arrays.fill(names, null);
+        Arrays.fill(values, null);
+        count = 0;
+    }
+//defines the variable for first assignment and throws error when constant is not defined static scopes or if it is already defined
+    void define(Symbol name, Object value) {
+        if (name.isConstant && names[slot(name)] != null) {
             throw new RuntimeError("Constant variable can not be changed'" + name + "'.");
         }
-        if ((name.charAt(0) >= 'A' && name.charAt(0) <= 'Z') && enclosing != null) {
+        if (name.isConstant && enclosing != null) {
             throw new RuntimeError("dynamic constant assignment is not allowed");
         }
+        if (block && names[slot(name)] == null && writeThrough(name, value))
+            return;
         // in ruby changing the value in child scope changes it in parent scope as
         // everthing is assignment in ruby
-        values.put(name, value);
+        put(name, value);
+    }
+    // binds name in this scope itself, block parameters shadow the variables around them
+    void declare(Symbol name, Object value) {
+        put(name, value);
+    }
+    // sets name in the scopes around a block up to the first one that is not a block
+    private boolean writeThrough(Symbol name, Object value) {
+        for (Environment scope = enclosing; scope != null; scope = scope.enclosing) {
+            int slot = scope.slot(name);
+            if (scope.names[slot] != null) {
+                scope.values[slot] = value;
+                name.version++;
+                return true;
+            }
+            if (!scope.block)
+                return false;
+        }
+        return false;
+    }
+// the slot holding name, or the empty slot where it would go
+    private int slot(Symbol name) {
+        int mask = names.length - 1;
+        int slot = name.id & mask;
+        while (names[slot] != null && names[slot] != name) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void put(Symbol name, Object value) {
+        int slot = slot(name);
+        if (names[slot] == null) {
+            // keep the table at most half full so probes stay short
+            if ((count + 1) * 2 > names.length) {
+                grow();
+                slot = slot(name);
+            }
+            names[slot] = name;
+            count++;
+        }
+        values[slot] = value;
+        name.version++;
+    }
+
+    private void grow() {
+        Symbol[] oldNames = names;
+        Object[] oldValues = values;
+        names = new Symbol[oldNames.length * 2];
+        values = new Object[oldNames.length * 2];
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int slot = slot(oldNames[i]);
+                names[slot] = oldNames[i];
+                values[slot] = oldValues[i];
+            }
+        }
     }
 
 }
@@ -24,6 +24,30 @@ abstract class Expr {
 		R visitRangeExpr(Expr.Range expr);
 		
 		R visitCallExpr(Call expr);
+
+		R visitGetExpr(Get expr);
+
+		R visitArrayExpr(Array expr);
+
+		R visitIndexExpr(Index expr);
+
+		R visitIndexSetExpr(IndexSet expr);
+
+		R visitHashExpr(Hash expr);
+
+		R visitSetExpr(Set expr);
+
+		R visitIvarExpr(Ivar expr);
+
+		R visitIvarSetExpr(IvarSet expr);
+
+		R visitSelfExpr(Self expr);
+
+		R visitSuperExpr(Super expr);
+
+		R visitTemplateExpr(Template expr);
+
+		R visitYieldExpr(Yield expr);
 	}
     // range expression implementation
 	public static class Range extends Expr {
@@ -58,6 +82,8 @@ abstract class Expr {
 		final Token name;
 		final Token operator;
 		final Expr value;
+		// the cell of a $global, resolved the first time the assignment runs
+		GlobalVariables.Cell global;
 	}
     // printlist expression implementation
 	static class PrintList extends Expr {
@@ -154,11 +180,34 @@ abstract class Expr {
 		final Expr callee;
 		final Token paren;
 		final List<Expr> arguments ;
+		// set by the parser when the call is the value of a return
+		boolean tail;
+		// methods of self found for name(...), checked before functions
+		final CallSiteCache cache = new CallSiteCache();
+		// the function name(...) resolved to and checked, found in scope with the name at version
+		RubyCallable function;
+		Environment scope;
+		long version = -1;
+		// number of arguments, up to three are passed through call0..call3
+		final int arity;
+		// value.name(...) the interpreter may do in place, null for most calls
+		final Intrinsic intrinsic;
+
+		// the do ... end or { ... } block written after the call, null when there is none
+		final Block block;
 
 		Call(Expr callee, Token paren, List<Expr> arguments) {
+			this(callee, paren, arguments, null);
+		}
+
+		Call(Expr callee, Token paren, List<Expr> arguments, Block block) {
 			this.callee = callee;
 			this.paren = paren;
 			this.arguments = arguments;
+			this.arity = arguments.size();
+			this.block = block;
+			// iterators with a block are inlined by the interpreter instead
+			this.intrinsic = callee instanceof Get && block == null ? Intrinsic.of(((Get) callee).name, arity) : null;
 		}
 
 		@Override
@@ -178,6 +227,243 @@ abstract class Expr {
 		}
 
 		final Token name;
+		// a name that is not a variable may be a method of self
+		final CallSiteCache cache = new CallSiteCache();
+		// the cell of a $global, resolved the first time the name is read
+		GlobalVariables.Cell global;
+	}
+
+    // method lookup on a value, object.name
+	static class Get extends Expr {
+		Get(Expr object, Token name) {
+			this.object = object;
+			this.name = name;
+			this.intrinsic = Intrinsic.of(name, 0);
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitGetExpr(this);
+		}
+
+		final Expr object;
+		final Token name;
+		final CallSiteCache cache = new CallSiteCache();
+		// value.name the interpreter may do in place, null for most names
+		final Intrinsic intrinsic;
+	}
+
+    // array literal, [a, b, c]
+	static class Array extends Expr {
+		Array(List<Expr> elements) {
+			this.elements = elements;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitArrayExpr(this);
+		}
+
+		final List<Expr> elements;
+	}
+    // element access, object[index]
+	static class Index extends Expr {
+		Index(Expr object, Token bracket, Expr index) {
+			this.object = object;
+			this.bracket = bracket;
+			this.index = index;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitIndexExpr(this);
+		}
+
+		final Expr object;
+		final Token bracket;
+		final Expr index;
+	}
+    // element assignment, object[index] = value or object[index] += value
+	static class IndexSet extends Expr {
+		IndexSet(Expr object, Token bracket, Expr index, Token operator, Expr value) {
+			this.object = object;
+			this.bracket = bracket;
+			this.index = index;
+			this.operator = operator;
+			this.value = value;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitIndexSetExpr(this);
+		}
+
+		final Expr object;
+		final Token bracket;
+		final Expr index;
+		final Token operator;
+		final Expr value;
+	}
+
+    // hash literal, { key => value, ... }
+	static class Hash extends Expr {
+		Hash(List<Expr> keys, List<Expr> values) {
+			this.keys = keys;
+			this.values = values;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitHashExpr(this);
+		}
+
+		final List<Expr> keys;
+		final List<Expr> values;
+	}
+
+    // attribute assignment, object.name = value or object.name += value
+	static class Set extends Expr {
+		Set(Expr object, Token name, Token operator, Expr value) {
+			this.object = object;
+			this.name = name;
+			this.setter = new Token(name.type, name.lexeme + "=", Symbol.intern(name.lexeme + "="), name.line);
+			this.operator = operator;
+			this.value = value;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitSetExpr(this);
+		}
+
+		final Expr object;
+		final Token name;
+		final Token setter;
+		final Token operator;
+		final Expr value;
+		// the getter is only called by the compound forms
+		final CallSiteCache getterCache = new CallSiteCache();
+		final CallSiteCache setterCache = new CallSiteCache();
+	}
+
+    // instance variable, @name
+	static class Ivar extends Expr {
+		Ivar(Token name) {
+			this.name = name;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitIvarExpr(this);
+		}
+
+		final Token name;
+		final Shape.Cache cache = new Shape.Cache();
+	}
+
+    // instance variable assignment, @name = value or @name += value
+	static class IvarSet extends Expr {
+		IvarSet(Token name, Token operator, Expr value) {
+			this.name = name;
+			this.operator = operator;
+			this.value = value;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitIvarSetExpr(this);
+		}
+
+		final Token name;
+		final Token operator;
+		final Expr value;
+		final Shape.Cache cache = new Shape.Cache();
+	}
+
+    // self, the receiver of the running method
+	static class Self extends Expr {
+		Self(Token keyword) {
+			this.keyword = keyword;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitSelfExpr(this);
+		}
+
+		final Token keyword;
+	}
+
+    // super(arguments), or a bare super passing on the method's own parameters
+	static class Super extends Expr {
+		Super(Token keyword, Token method, List<Expr> arguments) {
+			this.keyword = keyword;
+			this.method = method;
+			this.arguments = arguments;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitSuperExpr(this);
+		}
+
+		final Token keyword;
+		final Token method;
+		final List<Expr> arguments;
+		final CallSiteCache cache = new CallSiteCache();
+	}
+
+    // interpolated string, fragments.get(i) comes before values.get(i)
+	static class Template extends Expr {
+		Template(List<String> fragments, List<Expr> values) {
+			this.fragments = fragments;
+			this.values = values;
+			int length = 0;
+			for (String fragment : fragments) {
+				length += fragment.length();
+			}
+			this.constantLength = length;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitTemplateExpr(this);
+		}
+
+		final List<String> fragments;
+		final List<Expr> values;
+		// chars contributed by the fragments, for presizing the result
+		final int constantLength;
+	}
+
+    // a literal block, do |params| ... end or { |params| ... }, not an expression of its own
+	static class Block {
+		Block(List<Token> params, List<Stmt> body) {
+			this.params = new Symbol[params.size()];
+			for (int i = 0; i < params.size(); i++) {
+				this.params[i] = params.get(i).symbol();
+			}
+			this.body = body;
+		}
+
+		final Symbol[] params;
+		final List<Stmt> body;
+	}
+
+    // yield, yield(a, b) or yield a, b
+	static class Yield extends Expr {
+		Yield(Token keyword, List<Expr> arguments) {
+			this.keyword = keyword;
+			this.arguments = arguments;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitYieldExpr(this);
+		}
+
+		final Token keyword;
+		final List<Expr> arguments;
 	}
 
 	abstract <R> R accept(Visitor<R> visitor);
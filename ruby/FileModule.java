@@ -0,0 +1,66 @@
+package ruby;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/*
+ * File, reading and writing whole files and opening them
+ * File.foreach, File.open with a block and each_line with a block run as
+ * loops in the interpreter, see Interpreter.iterate.
+ */
+final class FileModule {
+    private FileModule() {
+    }
+
+    @Native
+    static RubyString read(RubyString path) {
+        try {
+            byte[] bytes = Files.readAllBytes(Paths.get(path.toString()));
+            return new RubyString(new String(bytes, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw RubyIO.error(e, path.toString());
+        }
+    }
+    // writes the to_s of content, returns the number of bytes written
+    @Native
+    static long write(RubyString path, Object content) {
+        RubyIO file = RubyIO.open(path.toString(), "w");
+        try {
+            return file.writer().write(Builtins.stringify(content)).written();
+        } finally {
+            file.close();
+        }
+    }
+
+    @Native
+    static RubyArray readlines(RubyString path) {
+        RubyIO file = RubyIO.open(path.toString(), "r");
+        try {
+            return IOModule.readlines(file);
+        } finally {
+            file.close();
+        }
+    }
+    // File.open(path) without a block, the file stays open until it is closed
+    @Native
+    static RubyIO open(Interpreter interpreter, RubyString path) {
+        return interpreter.open(path.toString(), "r");
+    }
+    // File.open(path, mode), mode is "r", "w" or "a"
+    @Native
+    static RubyIO open(Interpreter interpreter, RubyString path, RubyString mode) {
+        return interpreter.open(path.toString(), mode.toString());
+    }
+    // File.new(path, mode), the same
+    @Native("new")
+    static RubyIO create(Interpreter interpreter, RubyString path, RubyString mode) {
+        return interpreter.open(path.toString(), mode.toString());
+    }
+
+    @Native("exist?")
+    static boolean exist(RubyString path) {
+        return Files.exists(Paths.get(path.toString()));
+    }
+}
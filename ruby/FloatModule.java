@@ -0,0 +1,59 @@
+package ruby;
+
+import java.math.BigDecimal;
+
+/*
+ * Native methods of Float, the receiver is the first parameter
+ */
+final class FloatModule {
+    private FloatModule() {
+    }
+
+    @Native
+    static double abs(double self) {
+        return Math.abs(self);
+    }
+
+    @Native
+    static Object floor(double self) {
+        return integer(Math.floor(self));
+    }
+
+    @Native
+    static Object ceil(double self) {
+        return integer(Math.ceil(self));
+    }
+    // halves round away from zero, like ruby
+    @Native
+    static Object round(double self) {
+        return integer(self < 0 ? -Math.floor(-self + 0.5) : Math.floor(self + 0.5));
+    }
+
+    @Native
+    static Object to_i(double self) {
+        return integer(self < 0 ? Math.ceil(self) : Math.floor(self));
+    }
+
+    @Native
+    static double to_f(double self) {
+        return self;
+    }
+
+    @Native("nan?")
+    static boolean isNaN(double self) {
+        return Double.isNaN(self);
+    }
+
+    @Native("infinite?")
+    static boolean isInfinite(double self) {
+        return Double.isInfinite(self);
+    }
+    // a whole double as an Integer, big when it does not fit a long
+    private static Object integer(double whole) {
+        if (Double.isNaN(whole) || Double.isInfinite(whole))
+            throw new RuntimeError(whole + " can't be converted to an Integer (FloatDomainError)");
+        if (whole >= -0x1p63 && whole < 0x1p63)
+            return Arithmetic.box((long) whole);
+        return Arithmetic.normalize(new BigDecimal(whole).toBigInteger());
+    }
+}
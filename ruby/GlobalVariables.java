@@ -0,0 +1,36 @@
+package ruby;
+
+import java.util.Arrays;
+
+/*
+ * The $globals of a program
+ * Every global lives in one cell for the whole run, found by the id of its
+ * interned name. A $name in the source looks its cell up the first time it
+ * is evaluated and keeps it, after that reading or writing the global is a
+ * field access, however deep the scope it is used in.
+ * An unset global is nil, so a cell is simply made on first use.
+ */
+final class GlobalVariables {
+    static final class Cell {
+        final Symbol name;
+        Object value;
+
+        private Cell(Symbol name) {
+            this.name = name;
+        }
+    }
+    // symbol id -> cell, symbol ids are small and dense
+    private Cell[] cells = new Cell[64];
+
+    Cell cell(Symbol name) {
+        if (name.id >= cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(name.id + 1, cells.length * 2));
+        }
+        Cell cell = cells[name.id];
+        if (cell == null) {
+            cell = new Cell(name);
+            cells[name.id] = cell;
+        }
+        return cell;
+    }
+}
@@ -0,0 +1,87 @@
+package ruby;
+
+/*
+ * Native methods of an open File, the receiver is the first parameter
+ */
+final class IOModule {
+    private IOModule() {
+    }
+    // the next line with its "\n", nil at the end
+    @Native
+    static RubyString gets(RubyIO self) {
+        return self.gets();
+    }
+    // the rest of the file
+    @Native
+    static RubyString read(RubyIO self) {
+        return self.read();
+    }
+
+    @Native
+    static RubyArray readlines(RubyIO self) {
+        RubyArray lines = new RubyArray();
+        for (RubyString line = self.gets(); line != null; line = self.gets())
+            lines.push(line);
+        return lines;
+    }
+
+    @Native
+    static long write(RubyIO self, Object value) {
+        OutputSink writer = self.writer();
+        long before = writer.written();
+        return writer.write(Builtins.stringify(value)).written() - before;
+    }
+
+    @Native
+    static void print(RubyIO self, Object value) {
+        self.writer().write(Builtins.stringify(value));
+    }
+    // like puts, arrays a line per element and no second "\n" after a line that has one
+    @Native
+    static void puts(RubyIO self, Object value) {
+        puts(self.writer(), value);
+    }
+
+    private static void puts(OutputSink writer, Object value) {
+        if (value instanceof RubyArray) {
+            for (Object element : (RubyArray) value)
+                puts(writer, element);
+            return;
+        }
+        String line = Builtins.stringify(value);
+        writer.write(line);
+        if (!line.endsWith("\n"))
+            writer.newline();
+    }
+
+    @Native
+    static RubyIO flush(RubyIO self) {
+        self.writer().flush();
+        return self;
+    }
+
+    @Native
+    static void close(Interpreter interpreter, RubyIO self) {
+        interpreter.close(self);
+    }
+
+    @Native("closed?")
+    static boolean closed(RubyIO self) {
+        return self.isClosed();
+    }
+
+    @Native("eof?")
+    static boolean eof(RubyIO self) {
+        return self.atEnd();
+    }
+
+    @Native
+    static long lineno(RubyIO self) {
+        return self.lineno;
+    }
+
+    @Native
+    static String path(RubyIO self) {
+        return self.path;
+    }
+}
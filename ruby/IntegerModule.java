@@ -0,0 +1,97 @@
+package ruby;
+
+import java.math.BigInteger;
+
+/*
+ * Native methods of Integer, the receiver is the first parameter
+ */
+final class IntegerModule {
+    private IntegerModule() {
+    }
+    // an Object receiver so big integers work too
+    @Native
+    static Object abs(Object self) {
+        return Arithmetic.toBig(self).signum() < 0 ? Arithmetic.negate(self) : self;
+    }
+
+    @Native("even?")
+    static boolean isEven(Object self) {
+        return !Arithmetic.toBig(self).testBit(0);
+    }
+
+    @Native("odd?")
+    static boolean isOdd(Object self) {
+        return Arithmetic.toBig(self).testBit(0);
+    }
+
+    @Native("zero?")
+    static boolean isZero(Object self) {
+        return Arithmetic.toBig(self).signum() == 0;
+    }
+
+    @Native
+    static Object succ(Object self) {
+        return Builtins.add(null, self, Arithmetic.box(1));
+    }
+
+    @Native
+    static Object pred(Object self) {
+        return Builtins.add(null, self, Arithmetic.box(-1));
+    }
+
+    @Native
+    static Object gcd(Object self, Object other) {
+        return Arithmetic.normalize(Arithmetic.toBig(self).gcd(integer(other)));
+    }
+
+    @Native
+    static Object lcm(Object self, Object other) {
+        BigInteger a = Arithmetic.toBig(self);
+        BigInteger b = integer(other);
+        if (a.signum() == 0 || b.signum() == 0)
+            return Arithmetic.box(0);
+        return Arithmetic.normalize(a.multiply(b).abs().divide(a.gcd(b)));
+    }
+
+    @Native
+    static double to_f(Object self) {
+        return ((Number) self).doubleValue();
+    }
+
+    @Native
+    static Object to_i(Object self) {
+        return self;
+    }
+
+    @Native
+    static String chr(long self) {
+        if (self < 0 || self > 0xff)
+            throw new RuntimeError(self + " out of char range");
+        return String.valueOf((char) self);
+    }
+    // least significant digit first, like ruby
+    @Native
+    static RubyArray digits(Object self) {
+        BigInteger value = Arithmetic.toBig(self);
+        if (value.signum() < 0)
+            throw new RuntimeError("out of domain");
+        RubyArray digits = new RubyArray();
+        if (self instanceof Long) {
+            long n = (Long) self;
+            do {
+                digits.push(Arithmetic.box(n % 10));
+                n /= 10;
+            } while (n > 0);
+            return digits;
+        }
+        for (char c : new StringBuilder(value.toString()).reverse().toString().toCharArray())
+            digits.push(Arithmetic.box(c - '0'));
+        return digits;
+    }
+
+    private static BigInteger integer(Object value) {
+        if (!Arithmetic.isInteger(value))
+            throw new RuntimeError("no implicit conversion of " + Builtins.typeName(value) + " into Integer");
+        return Arithmetic.toBig(value);
+    }
+}
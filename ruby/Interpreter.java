@@ -2,8 +2,13 @@ package ruby;
 
 import static ruby.TokenType.EQUAL;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.lang.Math;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
@@ -19,6 +24,27 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             super(message);
         }
     }
+    // break in a yielded block, leaves the call the block was given to
+    private static class BlockBreak extends RuntimeException {
+        final RubyBlock block;
+
+        BlockBreak(RubyBlock block) {
+            super(null, null, false, false);
+            this.block = block;
+        }
+    }
+    // return in a yielded block, returns from the method the block was written in
+    private static class BlockReturn extends RuntimeException {
+        final RubyBlock block;
+        final Object value;
+
+        BlockReturn(RubyBlock block, Object value) {
+            super(null, null, false, false);
+            this.block = block;
+            this.value = value;
+        }
+    }
+    private static final Object NOT_ITERATED = new Object();
 /*
  * The environment field in the interpreter changes as we enter and exit local scopes. 
  * It tracks the current environment. 
@@ -26,38 +52,124 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
  */
     final Environment globals = new Environment();
     private Environment environment = globals;
+    // number of Ruby frames currently active, limited by maxDepth (--max-depth)
+    private int depth = 0;
+    int maxDepth = 100000;
+    // tail calls reuse the caller's frame unless disabled with --no-tail-calls
+    boolean tailCalls = true;
+    // results kept per memoized function (--memo-size)
+    int memoSize = 10000;
+    private final List<Memoized> memoized = new ArrayList<>();
+    // stdout of the script, print and puts write here
+    final OutputSink out = OutputSink.stdout();
+    // files opened and not closed yet, closed and so flushed at exit
+    private final Set<RubyIO> openFiles = new LinkedHashSet<>();
+    // $globals, one cell each, outside of any scope
+    private final GlobalVariables globalVariables = new GlobalVariables();
+    // $_, the line gets read last
+    private final GlobalVariables.Cell lastLine = globalVariables.cell(Symbol.intern("$_"));
+    final RubyIO stdin = RubyIO.stdin();
+    // STDOUT as an IO, writing to out
+    final RubyIO stdout = RubyIO.stdout(out);
+    // the receiver of the running method, main at the top level
+    private final RubyInstance main = new RubyInstance(RubyClass.OBJECT) {
+        @Override
+        public String toString() {
+            return "main";
+        }
+    };
+    RubyInstance self = main;
+    // the class of the running method, where super starts looking
+    RubyClass owner;
+    // the block given to the running method, what yield calls
+    RubyBlock block;
+    // the block a call site is handing to the method it calls, taken by RubyFunction
+    RubyBlock blockArgument;
+    private static final Symbol TO_S = Symbol.intern("to_s");
     // Constructor
     Interpreter() {
-        globals.define("clock", new RubyCallable() {
-            @Override
-            public int arity() { return 0; }
-            @Override
-            public Object call(Interpreter interpreter,List<Object> arguments) {
-                return (double)System.currentTimeMillis() / 1000.0;
-            }
-            @Override
-                public String toString() { return "<native fn>"; }
-            });
+        globals.define(Symbol.intern("Object"), RubyClass.OBJECT);
+        globals.define(Symbol.intern("Regexp"), RubyRegexp.CLASS);
+        // clock, rand, Math and the other native modules
+        Natives.install(globals);
+        globals.define(Symbol.intern("STDIN"), stdin);
+        globalVariables.cell(Symbol.intern("$stdin")).value = stdin;
+        globals.define(Symbol.intern("STDOUT"), stdout);
+        globalVariables.cell(Symbol.intern("$stdout")).value = stdout;
     }
     /*
      * main interpret method
      */
     void interpret(List<Stmt> statements) {
-        try {
+        guarded(() -> {
             for (Stmt statement : statements) {
                 execute(statement);
             }
+        });
+    }
+    /*
+     * -n and -p, the body runs once for every line of stdin with the line in $_
+     * The body is parsed once and run as this loop at the top level, so its
+     * variables live on from one line to the next like in ruby. next goes on
+     * with the next line, break ends the loop, -p prints $_ after each line.
+     */
+    void interpretLines(List<Stmt> body, boolean print) {
+        guarded(() -> {
+            int count = body.size();
+            while (gets() != null) {
+                try {
+                    for (int i = 0; i < count; i++)
+                        execute(body.get(i));
+                } catch (NextException next) {
+                    // on with the next line
+                } catch (BreakException exit) {
+                    return;
+                }
+                if (print && lastLine.value != null)
+                    print(lastLine.value);
+                out.done();
+            }
+        });
+    }
+
+    private void guarded(Runnable program) {
+        try {
+            program.run();
         } catch (RuntimeError error) {
             Ruby.runtimeError(error);
         }
         //exception handling for break and next statements
         catch (BreakException breakException) {
-            System.out.println(breakException.getMessage());
+            out.write(breakException.getMessage()).newline();
         }
 
         catch (NextException nextException) {
-            System.out.println(nextException.getMessage());
+            out.write(nextException.getMessage()).newline();
+        }
+        // the interpreter thread ran out of stack before maxDepth was reached
+        catch (StackOverflowError overflow) {
+            depth = 0;
+            environment = globals;
+            self = main;
+            owner = null;
+            block = null;
+            blockArgument = null;
+            Ruby.runtimeError(new RuntimeError("stack level too deep (SystemStackError)"));
+        }
+    }
+    /*
+     * Called by functions around their body so that runaway recursion
+     * is reported as a SystemStackError instead of crashing the JVM thread
+     */
+    void enterFrame(Token name) {
+        if (depth >= maxDepth) {
+            throw new RuntimeError(name, "stack level too deep (SystemStackError)");
         }
+        depth++;
+    }
+
+    void exitFrame() {
+        depth--;
     }
 
     /*
@@ -72,9 +184,107 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
       RubyFunction function = new RubyFunction(stmt,environment);
-      environment.define(stmt.name.lexeme, function);
+      environment.captured = true;
+      environment.define(stmt.name.symbol(), function);
       return null;
     }
+    /*
+     * memoize :name, puts a cache of results in front of the function called name
+     * The cache replaces the function where it is bound, so its recursive calls
+     * go through the cache as well, and call sites resolve the name again.
+     */
+    Symbol memoize(Symbol name) {
+      Object function = environment.lookup(name);
+      if (function instanceof Memoized)
+        return name;
+      if (!(function instanceof RubyFunction))
+        throw new RuntimeError("undefined function '" + name + "' for memoize");
+      Memoized cache = new Memoized(name, (RubyFunction) function, memoSize);
+      environment.assign(new Token(TokenType.IDENTIFIER, name.name, name, 0), cache);
+      memoized.add(cache);
+      return name;
+    }
+    // the cache of a memoized function, for memo_stats and memo_clear
+    Memoized memoized(Symbol name) {
+      Object function = environment.lookup(name);
+      if (!(function instanceof Memoized))
+        throw new RuntimeError("'" + name + "' is not memoized");
+      return (Memoized) function;
+    }
+    // --memo-stats
+    // gets, the next line of stdin into $_
+    RubyString gets() {
+        out.prompt();
+        RubyString line = stdin.gets();
+        lastLine.value = line;
+        return line;
+    }
+
+    RubyIO open(String path, String mode) {
+        RubyIO file = RubyIO.open(path, mode);
+        openFiles.add(file);
+        return file;
+    }
+
+    void close(RubyIO file) {
+        openFiles.remove(file);
+        file.close();
+    }
+
+    void closeFiles() {
+        for (RubyIO file : openFiles)
+            file.close();
+        openFiles.clear();
+    }
+
+    void printMemoStats() {
+      for (Memoized cache : memoized)
+        System.err.println("memoize " + cache.name + ": " + cache.stats());
+    }
+    /*
+     * class Name < Superclass ... end
+     * Opening a class that exists adds to it, redefined methods replace
+     * the old ones and bump the class version so cached call sites notice.
+     */
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        if (environment != globals) {
+            throw new RuntimeError(stmt.name, "class definition in method body");
+        }
+        RubyClass superclass = RubyClass.OBJECT;
+        if (stmt.superclass != null) {
+            Object value = evaluate(stmt.superclass);
+            if (!(value instanceof RubyClass)) {
+                throw new RuntimeError(stmt.superclass.name, "superclass must be a Class");
+            }
+            superclass = (RubyClass) value;
+        }
+        Object existing = environment.lookup(stmt.name.symbol());
+        RubyClass klass;
+        if (existing == Environment.UNDEFINED) {
+            klass = new RubyClass(stmt.name.lexeme, superclass);
+            environment.define(stmt.name.symbol(), klass);
+        } else if (!(existing instanceof RubyClass)) {
+            throw new RuntimeError(stmt.name, stmt.name.lexeme + " is not a class");
+        } else {
+            klass = (RubyClass) existing;
+            if (stmt.superclass != null && klass.superclass != superclass) {
+                throw new RuntimeError(stmt.name, "superclass mismatch for class " + stmt.name.lexeme);
+            }
+        }
+        for (Token reader : stmt.readers) {
+            klass.define(reader.symbol(), new Attribute(Symbol.intern("@" + reader.symbol().name), false));
+        }
+        for (Token writer : stmt.writers) {
+            klass.define(Symbol.intern(writer.symbol().name + "="),
+                    new Attribute(Symbol.intern("@" + writer.symbol().name), true));
+        }
+        for (Stmt.Function method : stmt.methods) {
+            klass.define(method.name.symbol(), new RubyFunction(method, environment, klass));
+        }
+        environment.captured = true;
+        return null;
+    }
     // this function implements the if statement it checks which condition is correct and 
     //implements the branch statements corresponding it
     @Override
@@ -101,24 +311,32 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitCaseStmt(Stmt.Case stmt) {
         Object expression = evaluate(stmt.condition);
-        int i = 0;
-        for (Expr condition : stmt.conditions) {
-            if ((evaluate(condition) == expression)
-                    || evaluate(condition).toString().compareTo(expression.toString()) == 0) {
-                for (Stmt branch : stmt.branches.get(i)) {
-                    execute(branch);
-                }
-                break;
-            }
-            i++;
+        if (!stmt.compiled) {
+            stmt.dispatch = CaseDispatch.compile(stmt);
+            stmt.compiled = true;
         }
-        if (i == stmt.conditions.size() && stmt.elseBranch != null) {
-            for (Stmt branch : stmt.elseBranch) {
-                execute(branch);
+        int branch = stmt.dispatch == null ? CaseDispatch.SEQUENTIAL : stmt.dispatch.select(expression);
+        if (branch == CaseDispatch.SEQUENTIAL) {
+            branch = firstMatchingArm(stmt, expression);
+        }
+        List<Stmt> body = branch >= 0 ? stmt.branches.get(branch) : stmt.elseBranch;
+        if (body != null) {
+            for (Stmt statement : body) {
+                execute(statement);
             }
         }
         return null;
     }
+    // tries the when values in order with ===, each one is evaluated at most once
+    private int firstMatchingArm(Stmt.Case stmt, Object expression) {
+        for (int arm = 0; arm < stmt.conditions.size(); arm++) {
+            for (Expr value : stmt.conditions.get(arm)) {
+                if (caseEquals(evaluate(value), expression))
+                    return arm;
+            }
+        }
+        return -1;
+    }
     //this function implements the visit method for while statement
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
@@ -191,20 +409,18 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         // eveluating iterable expression to get the values to iterate over
         Object iterableValue = evaluate(stmt.iterable);
 
-        if (iterableValue instanceof Iterable<?>) {
+        if (iterableValue instanceof RubyRange && ((RubyRange) iterableValue).isCounted()) {
+            countedLoop(stmt, (RubyRange) iterableValue);
+        } else if (iterableValue instanceof RubyArray) {
+            arrayLoop(stmt, (RubyArray) iterableValue);
+        } else if (iterableValue instanceof RubyHash) {
+            hashLoop(stmt, (RubyHash) iterableValue);
+        } else if (iterableValue instanceof Iterable<?>) {
             for (Object element : (Iterable<?>) iterableValue) {
                  // defining the loop variable in its scope
-                 environment.define(stmt.variable.lexeme, element);
+                 bindLoopVariables(stmt, element);
                 // executing the for each loop statement
-                for (Stmt statement : stmt.body) {
-                   try{
-                        execute(statement);
-                    }
-                    // implementation of next statement 
-                     catch (NextException nextException){
-                          break;
-                    }
-                }
+                executeForBody(stmt.body);
             }
         } else {
             Ruby.runtimeError(new RuntimeError("Cannot have a non iteratable in for loop"));
@@ -216,6 +432,68 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
         return null;
     }
+    // integer ranges are walked with a plain long, nothing is materialized
+    private void countedLoop(Stmt.For stmt, RubyRange range) {
+        long last = range.last();
+        long step = (Long) range.step;
+        for (long i = (Long) range.begin; i <= last; i += step) {
+            bindLoopVariable(stmt.variable.symbol(), Arithmetic.box(i));
+            executeForBody(stmt.body);
+            // i <= last so the difference fits an unsigned long, stop before i + step overflows
+            if (Long.compareUnsigned(last - i, step) < 0)
+                break;
+        }
+    }
+
+    // walks the array by index so elements pushed by the body are visited too
+    private void arrayLoop(Stmt.For stmt, RubyArray array) {
+        for (int i = 0; i < array.size(); i++) {
+            Object element = array.isLongs() ? Arithmetic.box(array.longAt(i)) : array.at(i);
+            bindLoopVariables(stmt, element);
+            executeForBody(stmt.body);
+        }
+    }
+    // with two variables the entries are bound straight from the hash, no pair is built
+    private void hashLoop(Stmt.For stmt, RubyHash hash) {
+        for (int entry = hash.next(-1); entry >= 0; entry = hash.next(entry)) {
+            if (stmt.value != null) {
+                bindLoopVariable(stmt.variable.symbol(), hash.keyAt(entry));
+                bindLoopVariable(stmt.value.symbol(), hash.valueAt(entry));
+            } else {
+                bindLoopVariable(stmt.variable.symbol(), hash.pair(entry));
+            }
+            executeForBody(stmt.body);
+        }
+    }
+    // for a, b in ... takes an array element apart
+    private void bindLoopVariables(Stmt.For stmt, Object element) {
+        if (stmt.value == null) {
+            bindLoopVariable(stmt.variable.symbol(), element);
+            return;
+        }
+        RubyArray parts = element instanceof RubyArray ? (RubyArray) element : null;
+        bindLoopVariable(stmt.variable.symbol(), parts != null ? parts.get(0) : element);
+        bindLoopVariable(stmt.value.symbol(), parts != null ? parts.get(1) : null);
+    }
+    // a $name loop variable sets the global, like $name = value in the body would
+    private void bindLoopVariable(Symbol name, Object value) {
+        if (name.isGlobal)
+            globalVariables.cell(name).value = value;
+        else
+            environment.define(name, value);
+    }
+
+    private void executeForBody(List<Stmt> body) {
+        for (Stmt statement : body) {
+           try{
+                execute(statement);
+            }
+            // implementation of next statement 
+             catch (NextException nextException){
+                  break;
+            }
+        }
+    }
     // this method implement unless statement 
     @Override
     public Void visitUnlessStmt(Stmt.Unless stmt) {
@@ -237,13 +515,21 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Void visitPrintStmt(Stmt.Print stmt) {
         for (Expr expression : stmt.expressions) {
             Object value = evaluate(expression);
-            String string = value!=null? stringify(value):"\0";//print null character when null is produced
-            if (stmt.type) {
-                System.out.println(string);
-            } else {
-                System.out.print(string);
+            // puts writes every element of an array on its own line
+            if (stmt.type && value instanceof RubyArray) {
+                putsArray((RubyArray) value);
+                continue;
+            }
+            if (value == null)
+                out.write("\0");//print null character when null is produced
+            else
+                print(value);
+            // like ruby, puts adds no second newline to a line that has one
+            if (stmt.type && !endsLine(value)) {
+                out.newline();
             }
         }
+        out.done();
         return null;
     }
  @Override
@@ -271,7 +557,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             }
         }
         for (int i = 0; i < index; i++) {
-            environment.define(stmt.name.get(i).lexeme, values.get(i));
+            Symbol name = stmt.name.get(i).symbol();
+            if (name.isGlobal)
+                globalVariables.cell(name).value = values.get(i);
+            else
+                environment.define(name, values.get(i));
         }
 
         return null;
@@ -283,26 +573,16 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     // the token already has the value
     //this function implements the visit method for range expression
     //during parsing itself we will decide whether the right value of the operand is inclusive or not depending on the token type
-    //then we will execute the statements in the body of the for loop 
+    //the range only keeps its ends, the for loop walks it lazily
     @Override
     public Object visitRangeExpr(Expr.Range expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
-        if (!(left instanceof Integer) || !(right instanceof Integer)) {
-            return null;
-        }
-
-        int start = (int) left;
-        int end = (int) right;
-
-        List<Object> result = new ArrayList<>();
-
-        for (int i = start; i <= (expr.inclusive ? end : end - 1); i++) {
-            result.add(i);
+        if (!isNumber(left) || !isNumber(right)) {
+            throw new RuntimeError("bad value for range");
         }
-
-        return result;
+        return new RubyRange(left, right, !expr.inclusive);
     }
     /*
      * implementing visitor methods
@@ -310,8 +590,40 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     // Literal - just return the value
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
+        // strings are mutable so every evaluation gets its own
+        if (expr.value instanceof String)
+            return new RubyString((String) expr.value);
         return expr.value;
     }
+    /*
+     * "text #{expr} text"
+     * The values are turned into strings first, so the result is built in a
+     * buffer of exactly the right size with the fragments copied in as they are.
+     */
+    @Override
+    public Object visitTemplateExpr(Expr.Template expr) {
+        int count = expr.values.size();
+        CharSequence[] values = new CharSequence[count];
+        int length = expr.constantLength;
+        for (int i = 0; i < count; i++) {
+            values[i] = toS(evaluate(expr.values.get(i)));
+            length += values[i].length();
+        }
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < count; i++) {
+            builder.append(expr.fragments.get(i)).append(values[i]);
+        }
+        builder.append(expr.fragments.get(count));
+        return new RubyString(builder.toString());
+    }
+    // to_s as interpolation uses it, nil is empty
+    private CharSequence toS(Object value) {
+        if (value == null)
+            return "";
+        if (value instanceof RubyString)
+            return (RubyString) value;
+        return stringify(value);
+    }
     // Grouping expression - evalute the expression and 
     // return the result
     @Override
@@ -329,9 +641,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             case BANG:
                 return !isTruth(right);
             case MINUS:
+                checkNumberOperand(expr.operator, right);
                 if (right instanceof Double)
                     return -(double) right;
-                return -(int) right;
+                return Arithmetic.negate(right);
         }
         // just to satisfy the jvm
         return null;
@@ -342,107 +655,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitBinaryExpr(Expr.Binary expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
-        /*
-         * In comparisons and operators like exponent +, and *
-         * Multiple types have differnt differnt stuff to be done
-         * Therefore checking the type and also type casting as what we 
-         * have is type object
-         * 
-         * Object that is a instance of Integer, needs to be explicity type casted
-         * to Integer and only then we can cast it to double
-         */
         switch (expr.operator.type) {
-            // Exponent
-            /*
-             * In each place checking if operands are just numbers
-             * for all the operators that only work on numbers
-             */
-            case STAR_STAR:
-                checkNumberOperands(expr.operator, left, right);
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        return Math.pow((double) (Integer) left, (double) right);
-                    }
-                    if (right instanceof Integer) {
-                        return Math.pow((double) left, (double) (Integer) right);
-                    }
-                    return Math.pow((double) left, (double) right);
-                }
-                if (left instanceof Integer && right instanceof Integer) {
-                    if ((int) right < 0) {
-                        return "1/" + (int) Math.pow((int) left, -(int) right);
-                    }
-                    return (int) Math.pow((int) left, (int) right);
-                }
-                // Comparison
-            case GREATER:
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        return (double) (Integer) left > (double) right;
-                    }
-                    if (right instanceof Integer) {
-                        return (double) left > (double) (Integer) right;
-                    }
-                    return (double) left > (double) right;
-                }
-                if (left instanceof Integer && right instanceof Integer) {
-                    return (int) left > (int) right;
-                }
-                if (left instanceof String && right instanceof String) {
-                    return true ? ((String) left).compareTo((String) right) > 0 : false;
-                }
-                throw new RuntimeError(expr.operator, "Operands must be two int/f or two strings.");
-            case GREATER_EQUAL:
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        return (double) (Integer) left >= (double) right;
-                    }
-                    if (right instanceof Integer) {
-                        return (double) left >= (double) (Integer) right;
-                    }
-                    return (double) left >= (double) right;
-                }
-                if (left instanceof Integer && right instanceof Integer) {
-                    return (int) left >= (int) right;
-                }
-                if (left instanceof String && right instanceof String) {
-                    return true ? ((String) left).compareTo((String) right) >= 0 : false;
-                }
-                throw new RuntimeError(expr.operator, "Operands must be two int/f or two strings.");
-            case LESS:
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        return (double) (Integer) left < (double) right;
-                    }
-                    if (right instanceof Integer) {
-                        return (double) left < (double) (Integer) right;
-                    }
-                    return (double) left < (double) right;
-                }
-                if (left instanceof Integer && right instanceof Integer) {
-                    return (int) left < (int) right;
-                }
-                if (left instanceof String && right instanceof String) {
-                    return true ? ((String) left).compareTo((String) right) < 0 : false;
-                }
-                throw new RuntimeError(expr.operator, "Operands must be two int/f or two strings.");
-            case LESS_EQUAL:
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        return (double) (Integer) left <= (double) right;
-                    }
-                    if (right instanceof Integer) {
-                        return (double) left <= (double) (Integer) right;
-                    }
-                    return (double) left <= (double) right;
-                }
-                if (left instanceof Integer && right instanceof Integer) {
-                    return (int) left <= (int) right;
-                }
-                if (left instanceof String && right instanceof String) {
-                    return true ? ((String) left).compareTo((String) right) <= 0 : false;
-                }
-                throw new RuntimeError(expr.operator, "Operands must be two int/f or two strings.");
             /*
              * Just return if it is equal or not equal 
              */
@@ -450,88 +663,106 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 return !isEqual(left, right);
             case EQUAL_EQUAL:
                 return isEqual(left, right);
-            // Operators
-            case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        return (double) (Integer) left - (double) right;
-                    }
-                    if (right instanceof Integer) {
-                        return (double) left - (double) (Integer) right;
-                    }
-                    return (double) left - (double) right;
-                }
-                if (left instanceof Integer && right instanceof Integer) {
-                    return (int) left - (int) right;
+            case EQUAL_EQUAL_EQUAL:
+                return caseEquals(left, right);
+            case EQUAL_TILDE:
+                return Builtins.matchIndex(expr.operator, left, right);
+            case BANG_TILDE:
+                return Builtins.matchIndex(expr.operator, left, right) == null;
+            default:
+                return binaryOperation(expr.operator.type, expr.operator, left, right);
+        }
+    }
+    /*
+     * Arithmetic and comparison shared by binary expressions and the
+     * compound assignments. The long/long case is checked first as it is by
+     * far the most common one, then big integers, then the mixed and float
+     * cases. They go through Arithmetic on primitives so the result is
+     * boxed only once.
+     */
+    static Object binaryOperation(TokenType operator, Token token, Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return Arithmetic.integer(operator, token, (Long) left, (Long) right);
+        }
+        if (Arithmetic.isInteger(left) && Arithmetic.isInteger(right)) {
+            return Arithmetic.big(operator, token, Arithmetic.toBig(left), Arithmetic.toBig(right));
+        }
+        if (isNumber(left) && isNumber(right)) {
+            return Arithmetic.floating(operator, token, toDouble(left), toDouble(right));
+        }
+        switch (operator) {
+            // Comparison
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                if (left instanceof RubyString && right instanceof RubyString) {
+                    int compared = ((RubyString) left).compareTo((RubyString) right);
+                    return Arithmetic.integer(operator, token, compared, 0);
                 }
-            case SLASH:
-                checkNumberOperands(expr.operator, left, right);
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        return (double) (Integer) left / (double) right;
-                    }
-                    if (right instanceof Integer) {
-                        return (double) left / (double) (Integer) right;
-                    }
-                    return (double) left / (double) right;
+                throw new RuntimeError(token, "Operands must be two int/f or two strings.");
+            // Ruby supports string and array concatenation
+            case PLUS:
+                if (left instanceof RubyString && right instanceof RubyString) {
+                    return ((RubyString) left).plus((RubyString) right);
                 }
-                if (left instanceof Integer && right instanceof Integer) {
-                    return (int) left / (int) right;
+                if (left instanceof RubyArray && right instanceof RubyArray) {
+                    return ((RubyArray) left).concat((RubyArray) right);
                 }
-                // Ruby supports string replication
+                throw new RuntimeError(token, "Operands must be two int/f or two strings.");
+            // Ruby supports string replication
             case STAR:
                 // Float is rounded to int and the replication is done in ruby
-                if (left instanceof String && (right instanceof Integer || right instanceof Double)) {
-                    return StringReplicator((String) left, (int) right);
+                if (left instanceof RubyString && isNumber(right)) {
+                    return ((RubyString) left).times(token, (long) toDouble(right));
                 }
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        return (double) (Integer) left * (double) right;
-                    }
-                    if (right instanceof Integer) {
-                        return (double) left * (double) (Integer) right;
-                    }
-                    return (double) left * (double) right;
+                throw new RuntimeError(token, "Operands must be either String followed by integer or two.");
+            // appending to a string changes it in place
+            case LEFT_SHIFT:
+                if (left instanceof RubyString && right instanceof RubyString) {
+                    return ((RubyString) left).append((RubyString) right);
                 }
-                if (left instanceof Integer && right instanceof Integer) {
-                    return (int) left * (int) right;
+                if (left instanceof RubyArray) {
+                    return ((RubyArray) left).push(right);
                 }
-                throw new RuntimeError(expr.operator, "Operands must be either String followed by integer or two.");
-            case PLUS:
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        return (double) (Integer) left + (double) right;
-                    }
-                    if (right instanceof Integer) {
-                        return (double) left + (double) (Integer) right;
-                    }
-                    return (double) left + (double) right;
+                // csv << row
+                if (left instanceof CsvWriter) {
+                    return ((CsvWriter) left).add(right);
                 }
-                if (left instanceof Integer && right instanceof Integer) {
-                    return (int) left + (int) right;
-                }
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
-                }
-                throw new RuntimeError(expr.operator, "Operands must be two int/f or two strings.");
+                throw new RuntimeError(token, "no implicit conversion into String");
             case MOD:
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        return (double) (Integer) left % (double) right;
-                    }
-                    if (right instanceof Integer) {
-                        return (double) left % (double) (Integer) right;
-                    }
-                    return (double) left % (double) right;
-                }
-                if (left instanceof Integer && right instanceof Integer) {
-                    return (int) left % (int) right;
-                }
-                throw new RuntimeError(expr.operator, "Operands must be two int/f or two strings.");
+                throw new RuntimeError(token, "Operands must be two int/f or two strings.");
+            default:
+                checkNumberOperands(token, left, right);
+                return null;
+        }
+    }
+    // the compound assignment operators map onto their binary operator
+    private TokenType binaryOperator(TokenType assignment) {
+        switch (assignment) {
+            case PLUS_EQUAL:
+                return TokenType.PLUS;
+            case MINUS_EQUAL:
+                return TokenType.MINUS;
+            case STAR_EQUAL:
+                return TokenType.STAR;
+            case SLASH_EQUAL:
+                return TokenType.SLASH;
+            case MOD_EQUAL:
+                return TokenType.MOD;
+            default:
+                return null;
         }
-        // again to satisy jvm
-        return null;
+    }
+
+    private static boolean isNumber(Object object) {
+        return object instanceof Long || object instanceof Double || object instanceof BigInteger;
+    }
+
+    private static double toDouble(Object number) {
+        if (number instanceof Long)
+            return (Long) number;
+        return ((Number) number).doubleValue();
     }
 
     
@@ -539,78 +770,788 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     /*
      *First, we evaluate the expression for the callee
      * this expression is just an identifier that looks up the function by its name.
-     * Then we evaluate each of the argument expressions in order and store the resulting values in a list.
+     * Then we evaluate each of the argument expressions in order, up to three of them
+     * are passed as plain values through call0..call3, more go in a list.
      */
     public Object visitCallExpr(Expr.Call expr) {
-      Object callee = evaluate(expr.callee);
-      List<Object> arguments = new ArrayList<>();
-      for (Expr argument : expr.arguments) {
-        arguments.add(evaluate(argument));
+      try {
+        return call(expr);
+      } catch (RuntimeError error) {
+        throw error.at(expr.paren);
+      }
+    }
+
+    private Object call(Expr.Call expr) {
+      if (expr.block != null)
+        return callWithBlock(expr);
+      if (expr.callee instanceof Expr.Get) {
+        Expr.Get method = (Expr.Get) expr.callee;
+        Object receiver = evaluate(method.object);
+        if (expr.arity > 3)
+          return send(method.name, method.cache, receiver, evaluateArguments(expr));
+        Object a = expr.arity > 0 ? evaluate(expr.arguments.get(0)) : null;
+        Object b = expr.arity > 1 ? evaluate(expr.arguments.get(1)) : null;
+        Object c = expr.arity > 2 ? evaluate(expr.arguments.get(2)) : null;
+        if (expr.intrinsic != null) {
+          Object result = expr.intrinsic.apply(receiver, a);
+          if (result != Intrinsic.MISS)
+            return result;
+        }
+        return send(method.name, method.cache, receiver, expr.arity, a, b, c);
+      }
+      RubyCallable function;
+      if (expr.callee instanceof Expr.Variable) {
+        // name(...) inside a method calls the method of self first
+        Token name = ((Expr.Variable) expr.callee).name;
+        RubyCallable method = expr.cache.lookup(self.klass, name.symbol());
+        if (method != null) {
+          checkArity(expr.paren, method, expr.arity);
+          return call(method, expr);
+        }
+        /*
+         * The function found by an earlier call from here is called without
+         * looking up the name or checking it again while no scope has
+         * written the name since and the call runs in a new scope of the
+         * same enclosing one, as the calls from a function body do. Only
+         * a binding in the scopes around is kept, the scope of the call
+         * itself is a new one each time.
+         */
+        Symbol symbol = name.symbol();
+        if (symbol.version == expr.version && environment.enclosing == expr.scope
+            && !environment.has(symbol)) {
+          function = expr.function;
+        } else {
+          function = resolve(expr);
+          Environment around = environment.enclosing;
+          if (around != null && !environment.has(symbol) && around.lookup(symbol) == function) {
+            expr.function = function;
+            expr.scope = around;
+            expr.version = symbol.version;
+          }
+        }
+      } else {
+        function = resolve(expr);
+      }
+      // let the enclosing RubyFunction run the call in its own loop
+      if (expr.tail && tailCalls && depth > 0 && function instanceof RubyFunction) {
+        throw new TailCall((RubyFunction) function, evaluateArguments(expr));
+      }
+      return call(function, expr);
+    }
+    /*
+     * A call with a literal block
+     * The builtin iterators run the block inline, anything else has to be a
+     * method or function written in ruby that gets the block to yield to.
+     */
+    private Object callWithBlock(Expr.Call expr) {
+      if (expr.callee instanceof Expr.Get) {
+        Expr.Get method = (Expr.Get) expr.callee;
+        Object receiver = evaluate(method.object);
+        List<Object> arguments = evaluateArguments(expr);
+        Object result = iterate(expr.block, method.name, receiver, arguments);
+        if (result != NOT_ITERATED)
+          return result;
+        RubyCallable function = null;
+        if (receiver instanceof RubyInstance)
+          function = method.cache.lookup(((RubyInstance) receiver).klass, method.name.symbol());
+        if (function == null) {
+          throw new RuntimeError(method.name, "undefined method '" + method.name.lexeme + "' with a block for "
+              + Builtins.typeName(receiver));
+        }
+        checkArity(method.name, function, arguments);
+        return callWithBlock(expr.block, (RubyInstance) receiver, function, arguments);
+      }
+      RubyCallable function = null;
+      if (expr.callee instanceof Expr.Variable)
+        function = expr.cache.lookup(self.klass, ((Expr.Variable) expr.callee).name.symbol());
+      if (function == null)
+        function = resolve(expr);
+      else
+        checkArity(expr.paren, function, expr.arity);
+      return callWithBlock(expr.block, self, function, evaluateArguments(expr));
+    }
+
+    private Object callWithBlock(Expr.Block code, RubyInstance receiver, RubyCallable function, List<Object> arguments) {
+      RubyBlock given = new RubyBlock(code, environment, self, owner, block);
+      environment.captured = true;
+      RubyInstance caller = self;
+      self = receiver;
+      blockArgument = given;
+      try {
+        return function.call(this, arguments);
+      } catch (BlockBreak exit) {
+        if (exit.block != given)
+          throw exit;
+        return null;
+      } catch (BlockReturn exit) {
+        if (exit.block != given)
+          throw exit;
+        throw new Return(exit.value);
+      } finally {
+        // a native never takes the block
+        blockArgument = null;
+        self = caller;
+      }
+    }
+    /*
+     * n.times, a.upto(b), range.each, array.each, hash.each and the File,
+     * CSV and JSON iterators with a literal block run as loops right here, without a
+     * block object or a frame per iteration. The block gets one scope that
+     * is emptied before each iteration (or replaced, once a def closed over
+     * it), break leaves the loop with nil and next goes on with the next
+     * element.
+     */
+    private Object iterate(Expr.Block code, Token name, Object receiver, List<Object> arguments) {
+      try {
+        switch (name.lexeme) {
+          case "times":
+            if (arguments.isEmpty() && receiver instanceof Long) {
+              countUp(code, 0, (Long) receiver - 1, 1);
+              return receiver;
+            }
+            break;
+          case "upto":
+            if (arguments.size() == 1 && receiver instanceof Long && arguments.get(0) instanceof Long) {
+              countUp(code, (Long) receiver, (Long) arguments.get(0), 1);
+              return receiver;
+            }
+            break;
+          case "each":
+            if (!arguments.isEmpty())
+              break;
+            if (receiver instanceof RubyRange && ((RubyRange) receiver).isCounted()) {
+              RubyRange range = (RubyRange) receiver;
+              countUp(code, (Long) range.begin, range.last(), (Long) range.step);
+              return receiver;
+            }
+            if (receiver instanceof RubyArray) {
+              eachElement(code, (RubyArray) receiver);
+              return receiver;
+            }
+            if (receiver instanceof RubyHash) {
+              eachEntry(code, (RubyHash) receiver);
+              return receiver;
+            }
+            break;
+          case "each_line":
+            if (arguments.isEmpty() && receiver instanceof RubyIO) {
+              eachLine(code, (RubyIO) receiver);
+              return receiver;
+            }
+            break;
+          case "foreach":
+            // File.foreach(path), the file is closed however the loop ends
+            if (arguments.size() == 1 && receiver == Natives.FILE) {
+              RubyIO file = open(path(arguments.get(0)), "r");
+              try {
+                eachLine(code, file);
+              } finally {
+                close(file);
+              }
+              return null;
+            }
+            // CSV.foreach(path, options) { |row| ... }, a row at a time from the mapped file
+            if ((arguments.size() == 1 || arguments.size() == 2) && receiver == Natives.CSV) {
+              CsvFormat format = CsvFormat.of(arguments.size() == 2 ? arguments.get(1) : null);
+              RubyIO file = open(path(arguments.get(0)), "r");
+              try {
+                eachRow(code, new CsvReader(file.lines(), format, file.path));
+              } finally {
+                close(file);
+              }
+              return null;
+            }
+            // JSON.foreach(path, options) { |element| ... }, the elements of the top level array
+            if ((arguments.size() == 1 || arguments.size() == 2) && receiver == Natives.JSON) {
+              boolean symbolizeNames = JsonModule.symbolizeNames(arguments.size() == 2 ? arguments.get(1) : null);
+              JsonReader reader = JsonReader.open(path(arguments.get(0)), symbolizeNames);
+              try {
+                eachJsonElement(code, reader);
+              } finally {
+                reader.close();
+              }
+              return null;
+            }
+            break;
+          case "stream":
+            // JSON.stream(path) { |event, value| ... }, an event per iteration
+            if (arguments.size() == 1 && receiver == Natives.JSON) {
+              JsonReader reader = JsonReader.open(path(arguments.get(0)), false);
+              try {
+                eachEvent(code, reader);
+              } finally {
+                reader.close();
+              }
+              return null;
+            }
+            break;
+          case "open":
+            // File.open(path, mode) { |file| ... } closes the file after the block
+            if ((arguments.size() == 1 || arguments.size() == 2) && receiver == Natives.FILE) {
+              String mode = arguments.size() == 2 ? path(arguments.get(1)) : "r";
+              RubyIO file = open(path(arguments.get(0)), mode);
+              try {
+                return once(code, file);
+              } finally {
+                close(file);
+              }
+            }
+            // CSV.open(path, mode, options) { |csv| csv << row }
+            if ((arguments.size() == 2 || arguments.size() == 3) && receiver == Natives.CSV) {
+              CsvFormat format = CsvFormat.of(arguments.size() == 3 ? arguments.get(2) : null);
+              RubyIO file = open(path(arguments.get(0)), path(arguments.get(1)));
+              try {
+                return once(code, new CsvWriter(file, format));
+              } finally {
+                close(file);
+              }
+            }
+            break;
+          default:
+            break;
+        }
+      } catch (BreakException exit) {
+        return null;
+      }
+      return NOT_ITERATED;
+    }
+
+    private void countUp(Expr.Block code, long first, long last, long step) {
+      Environment enclosing = environment;
+      Environment scope = new Environment(enclosing, true);
+      try {
+        for (long i = first; i <= last; i += step) {
+          scope = iterationScope(scope, enclosing);
+          bindBlock(code, scope, Arithmetic.box(i));
+          executeForBody(code.body);
+          // same overflow guard as the counted for loop
+          if (Long.compareUnsigned(last - i, step) < 0)
+            break;
+        }
+      } finally {
+        environment = enclosing;
+      }
+    }
+    // by index, so elements pushed by the block are visited too
+    private void eachElement(Expr.Block code, RubyArray array) {
+      Environment enclosing = environment;
+      Environment scope = new Environment(enclosing, true);
+      try {
+        for (int i = 0; i < array.size(); i++) {
+          scope = iterationScope(scope, enclosing);
+          bindBlock(code, scope, array.isLongs() ? Arithmetic.box(array.longAt(i)) : array.at(i));
+          executeForBody(code.body);
+        }
+      } finally {
+        environment = enclosing;
+      }
+    }
+
+    private void eachEntry(Expr.Block code, RubyHash hash) {
+      Environment enclosing = environment;
+      Environment scope = new Environment(enclosing, true);
+      try {
+        for (int entry = hash.next(-1); entry >= 0; entry = hash.next(entry)) {
+          scope = iterationScope(scope, enclosing);
+          if (code.params.length >= 2)
+            bindBlock(code, scope, hash.keyAt(entry), hash.valueAt(entry));
+          else
+            bindBlock(code, scope, hash.pair(entry));
+          executeForBody(code.body);
+        }
+      } finally {
+        environment = enclosing;
+      }
+    }
+    private void eachLine(Expr.Block code, RubyIO file) {
+      Environment enclosing = environment;
+      Environment scope = new Environment(enclosing, true);
+      try {
+        for (RubyString line = file.gets(); line != null; line = file.gets()) {
+          scope = iterationScope(scope, enclosing);
+          bindBlock(code, scope, line);
+          executeForBody(code.body);
+        }
+      } finally {
+        environment = enclosing;
+      }
+    }
+    // a row per iteration, |a, b| takes the fields apart
+    private void eachRow(Expr.Block code, CsvReader rows) {
+      Environment enclosing = environment;
+      Environment scope = new Environment(enclosing, true);
+      try {
+        for (RubyArray row = rows.next(); row != null; row = rows.next()) {
+          scope = iterationScope(scope, enclosing);
+          bindBlock(code, scope, row);
+          executeForBody(code.body);
+        }
+      } finally {
+        environment = enclosing;
+      }
+    }
+    private void eachEvent(Expr.Block code, JsonReader reader) {
+      Environment enclosing = environment;
+      Environment scope = new Environment(enclosing, true);
+      try {
+        for (JsonReader.Event event = reader.next(); event != null; event = reader.next()) {
+          scope = iterationScope(scope, enclosing);
+          boolean scalar = event == JsonReader.Event.KEY || event == JsonReader.Event.VALUE;
+          bindBlock(code, scope, event.symbol, scalar ? reader.scalar() : null);
+          executeForBody(code.body);
+        }
+      } finally {
+        environment = enclosing;
+      }
+    }
+    // only one element is held at a time, however long the array
+    private void eachJsonElement(Expr.Block code, JsonReader reader) {
+      if (reader.next() != JsonReader.Event.START_ARRAY)
+        throw new RuntimeError("JSON.foreach needs a document that is an array (JSON::ParserError)");
+      Environment enclosing = environment;
+      Environment scope = new Environment(enclosing, true);
+      try {
+        for (JsonReader.Event event = reader.next(); event != JsonReader.Event.END_ARRAY; event = reader.next()) {
+          Object element = reader.value(event);
+          scope = iterationScope(scope, enclosing);
+          bindBlock(code, scope, element);
+          executeForBody(code.body);
+        }
+      } finally {
+        environment = enclosing;
+      }
+    }
+    // runs the block a single time, its value is the value of the call
+    private Object once(Expr.Block code, Object value) {
+      Environment enclosing = environment;
+      environment = new Environment(enclosing, true);
+      try {
+        bindBlock(code, environment, value);
+        return blockValue(code.body);
+      } catch (NextException next) {
+        return null;
+      } finally {
+        environment = enclosing;
+      }
+    }
+    // a path or mode argument of File
+    private static String path(Object value) {
+      if (!(value instanceof RubyString))
+        throw new RuntimeError("no implicit conversion of " + Builtins.typeName(value) + " into String");
+      return value.toString();
+    }
+    // the scope for the next iteration and the current scope from now on
+    private Environment iterationScope(Environment scope, Environment enclosing) {
+      if (scope.captured)
+        scope = new Environment(enclosing, true);
+      else
+        scope.clear();
+      environment = scope;
+      return scope;
+    }
+    // one value, an array is taken apart when the block has several parameters
+    private static void bindBlock(Expr.Block code, Environment scope, Object value) {
+      Symbol[] params = code.params;
+      if (params.length == 0)
+        return;
+      if (params.length == 1) {
+        scope.declare(params[0], value);
+        return;
+      }
+      RubyArray parts = value instanceof RubyArray ? (RubyArray) value : null;
+      for (int i = 0; i < params.length; i++)
+        scope.declare(params[i], parts != null ? parts.get(i) : (i == 0 ? value : null));
+    }
+
+    private static void bindBlock(Expr.Block code, Environment scope, Object first, Object second) {
+      Symbol[] params = code.params;
+      for (int i = 0; i < params.length; i++)
+        scope.declare(params[i], i == 0 ? first : i == 1 ? second : null);
+    }
+    /*
+     * yield, runs the block given to the running method
+     * Missing arguments are nil and extra ones are dropped, like ruby.
+     * The value is the one of the block's last expression.
+     */
+    @Override
+    public Object visitYieldExpr(Expr.Yield expr) {
+      RubyBlock given = block;
+      if (given == null)
+        throw new RuntimeError(expr.keyword, "no block given (yield)");
+      Environment scope = new Environment(given.closure, true);
+      List<Expr> arguments = expr.arguments;
+      if (arguments.size() == 1) {
+        bindBlock(given.code, scope, evaluate(arguments.get(0)));
+      } else if (arguments.size() == 2) {
+        Object first = evaluate(arguments.get(0));
+        bindBlock(given.code, scope, first, evaluate(arguments.get(1)));
+      } else if (arguments.size() > 2) {
+        RubyArray values = new RubyArray(arguments.size());
+        for (Expr argument : arguments)
+          values.push(evaluate(argument));
+        if (given.code.params.length == 1)
+          scope.declare(given.code.params[0], values.get(0));
+        else
+          bindBlock(given.code, scope, values);
+      }
+      Environment previous = environment;
+      RubyInstance caller = self;
+      RubyClass callerOwner = owner;
+      environment = scope;
+      self = given.self;
+      owner = given.owner;
+      block = given.outer;
+      try {
+        return blockValue(given.code.body);
+      } catch (NextException next) {
+        return null;
+      } catch (BreakException exit) {
+        throw new BlockBreak(given);
+      } catch (Return exit) {
+        throw new BlockReturn(given, exit.value);
+      } catch (TailCall exit) {
+        // return f(x) in a block returns from the method that made the block, not the one that yielded
+        throw new BlockReturn(given, exit.function.call(this, exit.arguments));
+      } finally {
+        environment = previous;
+        self = caller;
+        owner = callerOwner;
+        block = given;
+      }
+    }
+    // runs a block body, its value is the value of its last statement when that is an expression
+    private Object blockValue(List<Stmt> body) {
+      int last = body.size() - 1;
+      for (int i = 0; i < last; i++)
+        execute(body.get(i));
+      if (last < 0)
+        return null;
+      Stmt tail = body.get(last);
+      if (tail instanceof Stmt.Expression)
+        return evaluate(((Stmt.Expression) tail).expression);
+      execute(tail);
+      return null;
+    }
+    // evaluates the arguments of a call and picks the entry point for their number
+    private Object call(RubyCallable function, Expr.Call expr) {
+      List<Expr> arguments = expr.arguments;
+      switch (expr.arity) {
+        case 0:
+          return function.call0(this);
+        case 1:
+          return function.call1(this, evaluate(arguments.get(0)));
+        case 2:
+          return function.call2(this, evaluate(arguments.get(0)), evaluate(arguments.get(1)));
+        case 3:
+          return function.call3(this, evaluate(arguments.get(0)), evaluate(arguments.get(1)),
+              evaluate(arguments.get(2)));
+        default:
+          return function.call(this, evaluateArguments(arguments));
       }
+    }
+    // the callee of a call, checked to be a function taking that many arguments
+    private RubyCallable resolve(Expr.Call expr) {
+      Object callee = null;
+      // the function bound to a name, not what naming it alone would call
+      if (expr.callee instanceof Expr.Variable)
+        callee = environment.lookup(((Expr.Variable) expr.callee).name.symbol());
+      if (callee == null || callee == Environment.UNDEFINED)
+        callee = evaluate(expr.callee);
       if (!(callee instanceof RubyCallable)) {
         throw new RuntimeError(expr.paren,
             "Can only call functions and classes.");
       }
       RubyCallable function = (RubyCallable)callee;
       //we check to see if the argument list’s length matches the callable’s arity.
-      if (arguments.size() != function.arity()) {
+      if (expr.arguments.size() != function.arity()) {
         throw new RuntimeError(expr.paren, "Expected " +
             function.arity() + " arguments but got " +
-            arguments.size() + ".");
+            expr.arguments.size() + ".");
       }
-      return function.call(this, arguments);
+      return function;
+    }
+    private List<Object> evaluateArguments(Expr.Call expr) {
+      return evaluateArguments(expr.arguments);
+    }
+
+    private List<Object> evaluateArguments(List<Expr> expressions) {
+      List<Object> arguments = new ArrayList<>();
+      for (Expr argument : expressions) {
+        arguments.add(evaluate(argument));
+      }
+      return arguments;
+    }
+
+    private void checkArity(Token token, RubyCallable function, List<Object> arguments) {
+      checkArity(token, function, arguments.size());
+    }
+
+    private void checkArity(Token token, RubyCallable function, int count) {
+      if (count != function.arity()) {
+        throw new RuntimeError(token, "Expected " +
+            function.arity() + " arguments but got " +
+            count + ".");
+      }
+    }
+    /*
+     * receiver.name(arguments)
+     * Methods of user classes come from the call site's inline cache,
+     * attribute methods are run in place, everything else is a builtin.
+     */
+    private Object send(Token name, CallSiteCache cache, Object receiver, List<Object> arguments) {
+      if (receiver instanceof RubyInstance) {
+        RubyInstance instance = (RubyInstance) receiver;
+        RubyCallable method = cache.lookup(instance.klass, name.symbol());
+        if (method != null) {
+          checkArity(name, method, arguments);
+          if (method instanceof Attribute) {
+            Attribute attribute = (Attribute) method;
+            return arguments.isEmpty() ? attribute.read(instance) : attribute.write(instance, arguments.get(0));
+          }
+          return invoke(instance, method, arguments);
+        }
+      }
+      return Builtins.send(this, receiver, name, arguments);
     }
     /*
-     * Method to check if any of the number operands are double
-     * if yes we need to typecast
+     * receiver.name(a, b, c) for count arguments of at most three
+     * Methods and module functions get the values without an argument list.
      */
-    private boolean operandDoubleChecker(Object left, Object right) {
-        if (left instanceof Double && right instanceof Double)
-            return true;
-        if (left instanceof Double && right instanceof Integer) {
-            right = (Integer) right;
-            return true;
+    private Object send(Token name, CallSiteCache cache, Object receiver, int count, Object a, Object b, Object c) {
+      if (receiver instanceof RubyInstance) {
+        RubyInstance instance = (RubyInstance) receiver;
+        RubyCallable method = cache.lookup(instance.klass, name.symbol());
+        if (method != null) {
+          checkArity(name, method, count);
+          if (method instanceof Attribute) {
+            Attribute attribute = (Attribute) method;
+            return count == 0 ? attribute.read(instance) : attribute.write(instance, a);
+          }
+          RubyInstance caller = self;
+          self = instance;
+          try {
+            return call(method, count, a, b, c);
+          } finally {
+            self = caller;
+          }
+        }
+      } else if (receiver instanceof RubyModule) {
+        // Math.sqrt(x)
+        NativeFunction function = ((RubyModule) receiver).function(name.symbol(), count);
+        if (function != null) {
+          checkArity(name, function, count);
+          return call(function, count, a, b, c);
+        }
+      }
+      return Builtins.send(this, receiver, name, arguments(count, a, b, c));
+    }
+
+    private Object call(RubyCallable function, int count, Object a, Object b, Object c) {
+      switch (count) {
+        case 0:
+          return function.call0(this);
+        case 1:
+          return function.call1(this, a);
+        case 2:
+          return function.call2(this, a, b);
+        default:
+          return function.call3(this, a, b, c);
+      }
+    }
+    // the builtins still take a list, a read only one is enough
+    private static List<Object> arguments(int count, Object a, Object b, Object c) {
+      switch (count) {
+        case 0:
+          return Collections.emptyList();
+        case 1:
+          return Collections.singletonList(a);
+        case 2:
+          return Arrays.asList(a, b);
+        default:
+          return Arrays.asList(a, b, c);
+      }
+    }
+    // runs a method with self set to its receiver
+    private Object invoke(RubyInstance receiver, RubyCallable method, List<Object> arguments) {
+      RubyInstance caller = self;
+      self = receiver;
+      try {
+        return method.call(this, arguments);
+      } finally {
+        self = caller;
+      }
+    }
+    // Class.new(arguments), hands the arguments to initialize
+    Object instantiate(Token name, RubyClass klass, List<Object> arguments) {
+      RubyInstance instance = new RubyInstance(klass);
+      RubyCallable initialize = klass.initializer();
+      if (initialize != null) {
+        checkArity(name, initialize, arguments);
+        invoke(instance, initialize, arguments);
+      } else if (!arguments.isEmpty()) {
+        throw new RuntimeError(name, "Expected 0 arguments but got " + arguments.size() + ".");
+      }
+      return instance;
+    }
+    // object.name = value, calls the name= method
+    @Override
+    public Object visitSetExpr(Expr.Set expr) {
+      Object receiver = evaluate(expr.object);
+      Object value;
+      if (expr.operator.type == EQUAL) {
+        value = evaluate(expr.value);
+      } else {
+        Object current = send(expr.name, expr.getterCache, receiver, 0, null, null, null);
+        value = binaryOperation(binaryOperator(expr.operator.type), expr.operator, current, evaluate(expr.value));
+      }
+      send(expr.setter, expr.setterCache, receiver, 1, value, null, null);
+      return value;
+    }
+    // @name, nil until it is set
+    @Override
+    public Object visitIvarExpr(Expr.Ivar expr) {
+      return expr.cache.read(self, expr.name.symbol());
+    }
+
+    @Override
+    public Object visitIvarSetExpr(Expr.IvarSet expr) {
+      Object value = evaluate(expr.value);
+      if (expr.operator.type != EQUAL) {
+        value = binaryOperation(binaryOperator(expr.operator.type), expr.operator, self.get(expr.name.symbol()), value);
+      }
+      expr.cache.write(self, expr.name.symbol(), value);
+      return value;
+    }
+
+    @Override
+    public Object visitSelfExpr(Expr.Self expr) {
+      return self;
+    }
+    // the method of the same name in the superclass of the running method's class
+    @Override
+    public Object visitSuperExpr(Expr.Super expr) {
+      if (owner == null || owner.superclass == null) {
+        throw new RuntimeError(expr.keyword, "super called outside of method");
+      }
+      RubyCallable method = expr.cache.lookup(owner.superclass, expr.method.symbol());
+      if (method == null) {
+        throw new RuntimeError(expr.keyword, "super: no superclass method '" + expr.method.lexeme + "'");
+      }
+      List<Object> arguments = evaluateArguments(expr.arguments);
+      checkArity(expr.keyword, method, arguments);
+      return method.call(this, arguments);
+    }
+    // [a, b, c], the array picks its storage from the values
+    @Override
+    public Object visitArrayExpr(Expr.Array expr) {
+        RubyArray array = new RubyArray(expr.elements.size());
+        for (Expr element : expr.elements) {
+            array.push(evaluate(element));
+        }
+        return array;
+    }
+    // value[index]
+    @Override
+    public Object visitIndexExpr(Expr.Index expr) {
+        Object object = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+        return index(expr.bracket, object, index);
+    }
+
+    // { key => value, ... }
+    @Override
+    public Object visitHashExpr(Expr.Hash expr) {
+        RubyHash hash = new RubyHash();
+        for (int i = 0; i < expr.keys.size(); i++) {
+            Object key = evaluate(expr.keys.get(i));
+            hash.put(key, evaluate(expr.values.get(i)));
         }
-        if (left instanceof Integer && right instanceof Double) {
-            left = (Integer) left;
-            return true;
+        return hash;
+    }
+
+    private Object index(Token bracket, Object object, Object index) {
+        if (object instanceof RubyHash) {
+            return ((RubyHash) object).get(index);
+        }
+        if (object instanceof RubyArray) {
+            if (index instanceof Long)
+                return ((RubyArray) object).get((Long) index);
+            throw new RuntimeError(bracket, "no implicit conversion of " + Builtins.typeName(index) + " into Integer");
+        }
+        if (object instanceof RubyMatch) {
+            if (index instanceof Long)
+                return ((RubyMatch) object).group((Long) index);
+            if (index instanceof RubyString || index instanceof Symbol)
+                return ((RubyMatch) object).group(bracket, index.toString());
+            throw new RuntimeError(bracket, "no implicit conversion of " + Builtins.typeName(index) + " into Integer");
+        }
+        throw new RuntimeError(bracket, "undefined method '[]' for " + Builtins.typeName(object));
+    }
+    // value[index] = v and the compound forms like value[index] += v
+    @Override
+    public Object visitIndexSetExpr(Expr.IndexSet expr) {
+        Object object = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+        Object value = evaluate(expr.value);
+        if (expr.operator.type != EQUAL) {
+            Object current = index(expr.bracket, object, index);
+            value = binaryOperation(binaryOperator(expr.operator.type), expr.operator, current, value);
+        }
+        if (object instanceof RubyHash) {
+            ((RubyHash) object).put(index, value);
+            return value;
+        }
+        if (object instanceof RubyArray) {
+            if (!(index instanceof Long))
+                throw new RuntimeError(expr.bracket, "no implicit conversion of " + Builtins.typeName(index) + " into Integer");
+            ((RubyArray) object).set(expr.bracket, (Long) index, value);
+            return value;
+        }
+        throw new RuntimeError(expr.bracket, "undefined method '[]=' for " + Builtins.typeName(object));
+    }
+    // a method called without parentheses or arguments, value.name
+    @Override
+    public Object visitGetExpr(Expr.Get expr) {
+        Object receiver = evaluate(expr.object);
+        if (expr.intrinsic != null) {
+            Object result = expr.intrinsic.apply(receiver, null);
+            if (result != Intrinsic.MISS)
+                return result;
+        }
+        try {
+            return send(expr.name, expr.cache, receiver, 0, null, null, null);
+        } catch (RuntimeError error) {
+            throw error.at(expr.name);
         }
-        return false;
     }
     /*
      * Check if the operands are numbers
      * throw error if not
      */
-    private void checkNumberOperands(Token operator, Object left, Object right) {
-        if (operandDoubleChecker(left, right) || left instanceof Integer && right instanceof Integer)
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (isNumber(left) && isNumber(right))
             return;
         throw new RuntimeError(operator, "Operators must be numbers." + right + left);
     }
     // this method is for unary operator and checks if it operating on numbers else it throws errors
     private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Double || operand instanceof Integer)
+        if (isNumber(operand))
             return;
         throw new RuntimeError(operator, "Operand must be a number.");
     }
     //checks the instances of the objects and returns if they are equal are not based on it
     private boolean isEqual(Object a, Object b) {
-        if (a == null && b == null)
-            return true;
-        if (a == null)
-            return false;
-        if (a instanceof Integer && b instanceof Double)
-            return (double) (Integer) a == (double) b;
-        if (b instanceof Integer && a instanceof Double)
-            return (double) (Integer) b == (double) a;
-        return a.equals(b);
-    }
-    //this method is used replicate string as string multiplcation is allowed in ruby
-    private String StringReplicator(String str, int count) {
-        String str1 = "";
-        for (int i = 0; i < count; i++) {
-            str1 += str;
-        }
-        return str1;
+        return Builtins.valueEquals(a, b);
+    }
+    // ===, a range matches the values it covers, everything else falls back to ==
+    private boolean caseEquals(Object pattern, Object value) {
+        if (pattern instanceof RubyRange)
+            return ((RubyRange) pattern).includes(value);
+        if (pattern instanceof RubyRegexp)
+            return value instanceof RubyString && ((RubyRegexp) pattern).matches((RubyString) value);
+        if (pattern instanceof RubyClass)
+            return value instanceof RubyInstance && ((RubyInstance) value).klass.isSubclassOf((RubyClass) pattern);
+        return isEqual(pattern, value);
     }
     // this is method implements vistor pattern which is used to classify to which expression belongs to
     private Object evaluate(Expr expr) {
@@ -629,7 +1570,51 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     private String stringify(Object object) {
         if (object == null)
             return "nil";
-        return object.toString();
+        // puts uses a to_s defined by the object's class
+        if (object instanceof RubyInstance) {
+            RubyInstance instance = (RubyInstance) object;
+            RubyCallable toS = instance.klass.findMethod(TO_S);
+            if (toS != null && toS.arity() == 0)
+                return Builtins.stringify(invoke(instance, toS, Collections.emptyList()));
+        }
+        return Builtins.stringify(object);
+    }
+    private static boolean endsLine(Object value) {
+        if (!(value instanceof RubyString))
+            return false;
+        RubyString string = (RubyString) value;
+        return string.length() > 0 && string.charAt(string.length() - 1) == '\n';
+    }
+    // writes the to_s of a value, numbers and strings go into the output buffer as they are
+    private void print(Object value) {
+        if (value instanceof Long)
+            out.write((long) (Long) value);
+        else if (value instanceof Double)
+            out.write((double) (Double) value);
+        else if (value instanceof RubyString)
+            out.write((RubyString) value);
+        else if (value instanceof Boolean)
+            out.write((Boolean) value ? "true" : "false");
+        else if (value instanceof Symbol)
+            out.write(((Symbol) value).name);
+        else
+            out.write(stringify(value));
+    }
+    // nested arrays are flattened, nil elements give an empty line
+    private void putsArray(RubyArray array) {
+        if (array.size() == 0) {
+            out.newline();
+        }
+        for (Object element : array) {
+            if (element instanceof RubyArray) {
+                putsArray((RubyArray) element);
+            } else {
+                if (element != null)
+                    print(element);
+                if (!endsLine(element))
+                    out.newline();
+            }
+        }
     }
     // this is method implements vistor pattern which is used to classify to which statement belongs to
     private void execute(Stmt stmt) {
@@ -657,6 +1642,29 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     //this method returns the value of varible given in coide
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
+        if (expr.global != null)
+            return expr.global.value;
+        if (expr.name.symbol().isGlobal) {
+            expr.global = globalVariables.cell(expr.name.symbol());
+            return expr.global.value;
+        }
+        Object value = environment.lookup(expr.name.symbol());
+        if (value instanceof NativeFunction && ((NativeFunction) value).arity() == 0) {
+            // gets or clock without parentheses calls the Kernel function
+            try {
+                return ((NativeFunction) value).call0(this);
+            } catch (RuntimeError error) {
+                throw error.at(expr.name);
+            }
+        }
+        if (value != Environment.UNDEFINED)
+            return value;
+        // a bare name that is no variable may be a method of self
+        RubyCallable method = expr.cache.lookup(self.klass, expr.name.symbol());
+        if (method != null) {
+            checkArity(expr.name, method, 0);
+            return method.call0(this);
+        }
         return environment.get(expr.name);
     }
     //this method is used to implement 'and' and 'or' operators
@@ -677,120 +1685,33 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     //this method is used for assigments majorly
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
-        Object left = (expr.operator.type == EQUAL) ? expr.name.lexeme : environment.get(expr.name);
         Object right = evaluate(expr.value);
-        switch (expr.operator.type) {
+        if (expr.name.symbol().isGlobal)
+            return assignGlobal(expr, right);
  // when operator is equal to it evalute and assign variables example a=(b=(c=5)+2)+10 or a=10 and
  // return value so we can assign for other varibles
-            case EQUAL:
-                environment.define(left.toString(), right);
-                return right;
-            // when +=,-=,*=,/=,%= we evalaute the expression and assign the value obtained on varible which it is used and 
-            //return null 
-            case PLUS_EQUAL:
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        Object value = (double) (Integer) left + (double) right;
-                        environment.assign(expr.name, value);
-                    }
-                    if (right instanceof Integer) {
-                        Object value = (double) left + (double) (Integer) right;
-                        environment.assign(expr.name, value);
-                    }
-                    Object value = (double) left + (double) right;
-                    environment.assign(expr.name, value);
-                }
-                if (left instanceof Integer && right instanceof Integer) {
-                    Object value = (int) left + (int) right;
-                    environment.assign(expr.name, value);
-                }
-                if (left instanceof String && right instanceof String) {
-                    Object value = (String) left + (String) right;
-                    environment.assign(expr.name, value);
-                }
-                break;
-            case MINUS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        Object value = (double) (Integer) left - (double) right;
-                        environment.assign(expr.name, value);
-                    }
-                    if (right instanceof Integer) {
-                        Object value = (double) left - (double) (Integer) right;
-                        environment.assign(expr.name, value);
-                    }
-                    Object value = (double) left - (double) right;
-                    environment.assign(expr.name, value);
-                }
-                if (left instanceof Integer && right instanceof Integer) {
-                    Object value = (int) left - (int) right;
-                    environment.assign(expr.name, value);
-                }
-                break;
-            case STAR_EQUAL:
-                if (left instanceof String && (right instanceof Integer || right instanceof Double)) {
-                    Object value = StringReplicator((String) left, ((int) right));
-                    environment.assign(expr.name, value);
-                }
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        Object value = (double) (Integer) left * (double) right;
-                        environment.assign(expr.name, value);
-                    }
-                    if (right instanceof Integer) {
-                        Object value = (double) left * (double) (Integer) right;
-                    }
-                    Object value = (double) left * (double) right;
-                    environment.assign(expr.name, value);
-                }
-                if (left instanceof Integer && right instanceof Integer) {
-                    Object value = (int) left * (int) right;
-                    environment.assign(expr.name, value);
-                }
-                break;
-            case SLASH_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        Object value = (double) (Integer) left / (double) right;
-                        environment.assign(expr.name, value);
-                    }
-                    if (right instanceof Integer) {
-                        Object value = (double) left / (double) (Integer) right;
-                        environment.assign(expr.name, value);
-                    }
-                    Object value = (double) left / (double) right;
-                    environment.assign(expr.name, value);
-                }
-                if (left instanceof Integer && right instanceof Integer) {
-                    Object value = (int) left / (int) right;
-                    environment.assign(expr.name, value);
-                }
-                break;
-            case MOD_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                if (operandDoubleChecker(left, right)) {
-                    if (left instanceof Integer) {
-                        Object value = (double) (Integer) left % (double) right;
-                        environment.assign(expr.name, value);
-                    }
-                    if (right instanceof Integer) {
-                        Object value = (double) left % (double) (Integer) right;
-                        environment.assign(expr.name, value);
-                    }
-                    Object value = (double) left % (double) right;
-                    environment.assign(expr.name, value);
-                }
-                if (left instanceof Integer && right instanceof Integer) {
-                    Object value = (int) left % (int) right;
-                    environment.assign(expr.name, value);
-                }
-                break;
-            default:
+        if (expr.operator.type == EQUAL) {
+            environment.define(expr.name.symbol(), right);
+            return right;
         }
-
-        return null;
+        // when +=,-=,*=,/=,%= we evalaute the expression with the matching binary operator
+        // and assign the value obtained on varible which it is used and return it
+        Object left = environment.get(expr.name);
+        Object value = binaryOperation(binaryOperator(expr.operator.type), expr.operator, left, right);
+        environment.assign(expr.name, value);
+        return value;
+    }
+    // $x = value and $x += value, straight into the cell of the global
+    private Object assignGlobal(Expr.Assign expr, Object right) {
+        GlobalVariables.Cell cell = expr.global;
+        if (cell == null) {
+            cell = globalVariables.cell(expr.name.symbol());
+            expr.global = cell;
+        }
+        if (expr.operator.type != EQUAL)
+            right = binaryOperation(binaryOperator(expr.operator.type), expr.operator, cell.value, right);
+        cell.value = right;
+        return right;
     }
 
 }
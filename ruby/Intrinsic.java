@@ -0,0 +1,81 @@
+package ruby;
+
+/*
+ * Hot builtin calls the interpreter does in place
+ * The parser tags x.abs, x.length, x.size, array.min, array.max and
+ * Math.sqrt(x) nodes with their intrinsic. At run time the intrinsic checks
+ * the receiver and does the work itself when it is one of the plain cases,
+ * skipping method lookup, the argument list and the native call. Anything
+ * else, a user class with a length method for one, gives MISS and the
+ * node takes the normal call path with the values it already evaluated.
+ */
+enum Intrinsic {
+    ABS, LENGTH, MIN, MAX, SQRT;
+
+    static final Object MISS = new Object();
+
+    // the intrinsic for value.name with that many arguments, null when there is none
+    static Intrinsic of(Token name, int arity) {
+        switch (name.lexeme) {
+            case "abs":
+                return arity == 0 ? ABS : null;
+            case "length":
+            case "size":
+                return arity == 0 ? LENGTH : null;
+            case "min":
+                return arity == 0 ? MIN : null;
+            case "max":
+                return arity == 0 ? MAX : null;
+            case "sqrt":
+                return arity == 1 ? SQRT : null;
+            default:
+                return null;
+        }
+    }
+
+    Object apply(Object receiver, Object argument) {
+        switch (this) {
+            case ABS:
+                if (receiver instanceof Long && (Long) receiver != Long.MIN_VALUE)
+                    return Arithmetic.box(Math.abs((Long) receiver));
+                if (receiver instanceof Double)
+                    return Math.abs((Double) receiver);
+                break;
+            case LENGTH:
+                if (receiver instanceof RubyString)
+                    return Arithmetic.box(((RubyString) receiver).length());
+                if (receiver instanceof RubyArray)
+                    return Arithmetic.box(((RubyArray) receiver).size());
+                if (receiver instanceof RubyHash)
+                    return Arithmetic.box(((RubyHash) receiver).size());
+                break;
+            case MIN:
+            case MAX:
+                if (receiver instanceof RubyArray && ((RubyArray) receiver).isLongs())
+                    return extreme((RubyArray) receiver, this == MAX);
+                break;
+            case SQRT:
+                // a negative number is left to Math.sqrt for its error
+                if (receiver == Natives.MATH) {
+                    if (argument instanceof Double && (Double) argument >= 0)
+                        return Math.sqrt((Double) argument);
+                    if (argument instanceof Long && (Long) argument >= 0)
+                        return Math.sqrt((Long) argument);
+                }
+                break;
+        }
+        return MISS;
+    }
+    // the smallest or largest element of an integer array, nil when it is empty
+    private static Object extreme(RubyArray array, boolean max) {
+        if (array.size() == 0)
+            return null;
+        long best = array.longAt(0);
+        for (int i = 1; i < array.size(); i++) {
+            long value = array.longAt(i);
+            if (max ? value > best : value < best)
+                best = value;
+        }
+        return Arithmetic.box(best);
+    }
+}
@@ -0,0 +1,83 @@
+package ruby;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * JSON, reading and writing JSON text
+ * Objects read as Hashes with String keys, or Symbols with
+ * symbolize_names: true, arrays as Arrays and numbers as Integers or Floats.
+ * JSON.stream(path) { |event, value| } and JSON.foreach(path) { |element| }
+ * read a file of any size in constant memory and run as loops in the
+ * interpreter, see Interpreter.iterate.
+ */
+final class JsonModule {
+    private static final Symbol SYMBOLIZE_NAMES = Symbol.intern("symbolize_names");
+
+    private JsonModule() {
+    }
+
+    @Native
+    static Object parse(RubyString text) {
+        return parse(text, null);
+    }
+
+    @Native
+    static Object parse(RubyString text, Object options) {
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        return JsonReader.of(bytes, symbolizeNames(options)).document();
+    }
+    // the document in the file, read a 1 MB block at a time instead of as a String of the whole file
+    @Native("load_file")
+    static Object loadFile(RubyString path) {
+        return loadFile(path, null);
+    }
+
+    @Native("load_file")
+    static Object loadFile(RubyString path, Object options) {
+        JsonReader reader = JsonReader.open(path.toString(), symbolizeNames(options));
+        try {
+            return reader.document();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Native
+    static String generate(Object value) {
+        return JsonWriter.generate(value, false);
+    }
+
+    @Native("pretty_generate")
+    static String prettyGenerate(Object value) {
+        return JsonWriter.generate(value, true);
+    }
+
+    @Native
+    static String dump(Object value) {
+        return JsonWriter.generate(value, false);
+    }
+    // JSON.dump(value, io), written straight into the buffer of the IO
+    @Native
+    static Object dump(Object value, Object io) {
+        if (!(io instanceof RubyIO))
+            throw new RuntimeError("no implicit conversion of " + Builtins.typeName(io) + " into IO");
+        OutputSink sink = ((RubyIO) io).writer();
+        JsonWriter.write(sink, value);
+        sink.done();
+        return io;
+    }
+    // true for symbolize_names: true
+    static boolean symbolizeNames(Object options) {
+        if (options == null)
+            return false;
+        if (!(options instanceof RubyHash))
+            throw new RuntimeError("no implicit conversion of " + Builtins.typeName(options) + " into Hash");
+        RubyHash hash = (RubyHash) options;
+        for (int entry = hash.next(-1); entry >= 0; entry = hash.next(entry)) {
+            if (hash.keyAt(entry) != SYMBOLIZE_NAMES)
+                throw new RuntimeError("unknown keyword: " + Builtins.inspect(hash.keyAt(entry)));
+        }
+        Object value = hash.get(SYMBOLIZE_NAMES);
+        return value != null && value != Boolean.FALSE;
+    }
+}
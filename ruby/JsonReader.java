@@ -0,0 +1,557 @@
+package ruby;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * A JSON document as a stream of events, pulled one at a time
+ *   START_OBJECT END_OBJECT START_ARRAY END_ARRAY
+ *   KEY    a member name, in value()
+ *   VALUE  a string, number, true, false or null, in value()
+ * A file is read a block at a time into one byte array, and a token is
+ * decoded as its bytes go by, so nothing is kept from an earlier block and
+ * the reader works in constant memory whatever the size of the document.
+ * JSON.parse scans the bytes of its String the same way, and builds its
+ * values from the events with a stack instead of recursion, so deep nesting
+ * can't overflow the java stack either.
+ * A string without escapes or non ASCII chars, nearly all of them, becomes
+ * a String straight from the bytes, the others are decoded from UTF-8 by
+ * hand into a reused char buffer. Member names that come up again (the
+ * keys of an array of records) are shared through a small cache. Integers
+ * are summed up from their digits, and so are Floats of up to 15 digits,
+ * which then take one exactly rounded multiplication or division by a power
+ * of ten. Longer ones go through Double.parseDouble.
+ */
+final class JsonReader {
+    enum Event {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, KEY, VALUE;
+
+        // :start_object and so on, what JSON.stream hands its block
+        final Symbol symbol = Symbol.intern(name().toLowerCase());
+    }
+
+    private static final int BLOCK = 1 << 20;
+    // 10^0 to 10^22, the powers of ten a double holds exactly
+    private static final double[] POWERS = new double[23];
+    private static final byte OBJECT = 1;
+    private static final byte ARRAY = 2;
+
+    // null for a document already in memory
+    private final FileChannel file;
+    // the block being read, from position to limit
+    private final byte[] bytes;
+    private int position;
+    private int limit;
+    // offset in the document of the start of the block
+    private long blockStart;
+    private final String name;
+    private final boolean symbolizeNames;
+
+    // the containers the reader is in
+    private byte[] stack = new byte[32];
+    private int depth;
+    // a value ended and a ',' or the end of its container comes next
+    private boolean afterValue;
+    // a ',' was read, the container can't end here
+    private boolean afterComma;
+    // the member name of the object was read, its value comes next
+    private boolean afterKey;
+    // the top level value is complete
+    private boolean done;
+    private Object value;
+
+    // the line and where it starts, for the errors
+    private long line = 1;
+    private long lineStart;
+    private char[] chars = new char[64];
+    private int length;
+    private final String[] names = new String[256];
+
+    static {
+        double power = 1;
+        for (int i = 0; i < POWERS.length; i++) {
+            POWERS[i] = power;
+            power *= 10;
+        }
+    }
+
+    private JsonReader(FileChannel file, byte[] bytes, int limit, String name, boolean symbolizeNames) {
+        this.file = file;
+        this.bytes = bytes;
+        this.limit = limit;
+        this.name = name;
+        this.symbolizeNames = symbolizeNames;
+    }
+
+    static JsonReader of(byte[] bytes, boolean symbolizeNames) {
+        return new JsonReader(null, bytes, bytes.length, "<string>", symbolizeNames);
+    }
+
+    // a reader over the file at path, to be closed
+    static JsonReader open(String path, boolean symbolizeNames) {
+        try {
+            FileChannel file = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+            return new JsonReader(file, new byte[BLOCK], 0, path, symbolizeNames);
+        } catch (IOException e) {
+            throw RubyIO.error(e, path);
+        }
+    }
+
+    void close() {
+        try {
+            if (file != null)
+                file.close();
+        } catch (IOException e) {
+            throw RubyIO.error(e, name);
+        }
+    }
+    // the whole document as ruby values
+    Object document() {
+        Event event = next();
+        if (event == null)
+            throw error("unexpected end of input");
+        Object document = value(event);
+        if (next() != null)
+            throw error("unexpected content after the document");
+        return document;
+    }
+    // the name of a KEY event, the value of a VALUE one
+    Object scalar() {
+        return value;
+    }
+    /*
+     * The value that starts with event: a Hash of its members, an Array
+     * of its elements or the scalar itself
+     */
+    Object value(Event event) {
+        if (event == Event.VALUE)
+            return value;
+        // the open containers and, for objects, the name each is waiting to fill
+        Object[] open = new Object[16];
+        Object[] keys = new Object[16];
+        int top = -1;
+        while (true) {
+            Object finished;
+            switch (event) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    if (++top == open.length) {
+                        open = Arrays.copyOf(open, top * 2);
+                        keys = Arrays.copyOf(keys, top * 2);
+                    }
+                    open[top] = event == Event.START_OBJECT ? new RubyHash() : new RubyArray();
+                    event = next();
+                    continue;
+                case KEY:
+                    keys[top] = value;
+                    event = next();
+                    continue;
+                case VALUE:
+                    finished = value;
+                    break;
+                default:
+                    finished = open[top];
+                    open[top--] = null;
+                    if (top < 0)
+                        return finished;
+                    break;
+            }
+            if (open[top] instanceof RubyHash)
+                ((RubyHash) open[top]).put(keys[top], finished);
+            else
+                ((RubyArray) open[top]).push(finished);
+            event = next();
+        }
+    }
+    // the next event, null after the end of the document
+    Event next() {
+        int c = skipWhitespace();
+        if (done) {
+            if (c >= 0)
+                throw unexpected(c);
+            return null;
+        }
+        if (depth > 0) {
+            boolean inObject = stack[depth - 1] == OBJECT;
+            if (afterValue) {
+                afterValue = false;
+                if (c == ',') {
+                    take();
+                    afterComma = true;
+                    c = skipWhitespace();
+                } else {
+                    return close(c, inObject);
+                }
+            } else if (!afterComma && !afterKey && (c == '}' || c == ']')) {
+                // an empty container
+                return close(c, inObject);
+            }
+            if (inObject && !afterKey) {
+                if (c != '"')
+                    throw unexpected(c);
+                take();
+                value = name(string(true));
+                if (skipWhitespace() != ':')
+                    throw unexpected(peek());
+                take();
+                afterKey = true;
+                afterComma = false;
+                return Event.KEY;
+            }
+        }
+        afterKey = false;
+        afterComma = false;
+        switch (c) {
+            case '{':
+                take();
+                return open(OBJECT, Event.START_OBJECT);
+            case '[':
+                take();
+                return open(ARRAY, Event.START_ARRAY);
+            case '"':
+                take();
+                value = new RubyString(string(false));
+                break;
+            case 't':
+                literal("true");
+                value = Boolean.TRUE;
+                break;
+            case 'f':
+                literal("false");
+                value = Boolean.FALSE;
+                break;
+            case 'n':
+                literal("null");
+                value = null;
+                break;
+            default:
+                if (c != '-' && (c < '0' || c > '9'))
+                    throw unexpected(c);
+                value = number();
+                break;
+        }
+        ended();
+        return Event.VALUE;
+    }
+
+    private Event open(byte kind, Event event) {
+        if (depth == stack.length)
+            stack = Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = kind;
+        return event;
+    }
+
+    private Event close(int c, boolean inObject) {
+        if (c != (inObject ? '}' : ']'))
+            throw unexpected(c);
+        take();
+        depth--;
+        ended();
+        return inObject ? Event.END_OBJECT : Event.END_ARRAY;
+    }
+    // a value is complete, in its container or as the whole document
+    private void ended() {
+        if (depth == 0)
+            done = true;
+        else
+            afterValue = true;
+    }
+    // a member name, a Symbol with symbolize_names
+    private Object name(String text) {
+        if (symbolizeNames)
+            return Symbol.intern(text);
+        return new RubyString(text);
+    }
+    /*
+     * The chars of a string after its opening quote, up to the closing one
+     * A name is looked up in the cache of names seen before.
+     */
+    private String string(boolean name) {
+        int start = position;
+        int end = start;
+        while (end < limit) {
+            byte b = bytes[end];
+            if (b == '"') {
+                position = end + 1;
+                return name ? shared(start, end) : new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+            }
+            if (b < 0x20 || b == '\\')
+                break;
+            end++;
+        }
+        // escapes, UTF-8 or the end of the block, char by char from here on
+        length = 0;
+        for (int i = start; i < end; i++)
+            append((char) bytes[i]);
+        position = end;
+        while (true) {
+            int c = take();
+            if (c == '"')
+                break;
+            if (c < 0)
+                throw error("unexpected end of input in a string");
+            if (c == '\\') {
+                escape();
+            } else if (c < 0x20) {
+                throw error("invalid ASCII control character in string");
+            } else if (c < 0x80) {
+                append((char) c);
+            } else {
+                codePoint(c);
+            }
+        }
+        return new String(chars, 0, length);
+    }
+    // an ASCII name between start and end of the block, the same names share one String
+    private String shared(int start, int end) {
+        int size = end - start;
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + bytes[i];
+        int slot = (hash ^ hash >>> 8) & (names.length - 1);
+        String known = names[slot];
+        if (known != null && known.length() == size && known.hashCode() == hash) {
+            boolean same = true;
+            for (int i = 0; i < size && same; i++)
+                same = known.charAt(i) == bytes[start + i];
+            if (same)
+                return known;
+        }
+        known = new String(bytes, start, size, StandardCharsets.ISO_8859_1);
+        names[slot] = known;
+        return known;
+    }
+
+    private void escape() {
+        int c = take();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                append((char) c);
+                break;
+            case 'b':
+                append('\b');
+                break;
+            case 'f':
+                append('\f');
+                break;
+            case 'n':
+                append('\n');
+                break;
+            case 'r':
+                append('\r');
+                break;
+            case 't':
+                append('\t');
+                break;
+            case 'u': {
+                // a surrogate pair comes as two escapes and ends up as two chars, as it should
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(take(), 16);
+                    if (digit < 0)
+                        throw error("incomplete unicode character escape sequence");
+                    code = code * 16 + digit;
+                }
+                append((char) code);
+                break;
+            }
+            default:
+                throw error("invalid escape character in string");
+        }
+    }
+    // a character of two to four bytes, lead is its first one
+    private void codePoint(int lead) {
+        int count;
+        int code;
+        if (lead >= 0xF0) {
+            count = 3;
+            code = lead & 0x07;
+        } else if (lead >= 0xE0) {
+            count = 2;
+            code = lead & 0x0F;
+        } else if (lead >= 0xC0) {
+            count = 1;
+            code = lead & 0x1F;
+        } else {
+            throw error("source sequence is illegal/malformed utf-8");
+        }
+        for (int i = 0; i < count; i++) {
+            int next = take();
+            if ((next & 0xC0) != 0x80)
+                throw error("source sequence is illegal/malformed utf-8");
+            code = code << 6 | (next & 0x3F);
+        }
+        if (code >= 0x10000) {
+            append(Character.highSurrogate(code));
+            append(Character.lowSurrogate(code));
+        } else {
+            append((char) code);
+        }
+    }
+
+    private void append(char c) {
+        if (length == chars.length) {
+            if (length >= Integer.MAX_VALUE / 2)
+                throw error("string too long");
+            chars = Arrays.copyOf(chars, length * 2);
+        }
+        chars[length++] = c;
+    }
+    /*
+     * -? (0 | [1-9][0-9]*) (. [0-9]+)? ([eE] [+-]? [0-9]+)?
+     * The text is kept in chars for the numbers that have to be read from it.
+     */
+    private Object number() {
+        length = 0;
+        boolean negative = peek() == '-';
+        if (negative)
+            append((char) take());
+        int first = length;
+        int whole = digits();
+        if (whole == 0)
+            throw error("unexpected character after '-'");
+        if (whole > 1 && chars[first] == '0')
+            throw error("leading zeros are not allowed");
+        int fraction = 0;
+        if (peek() == '.') {
+            append((char) take());
+            fraction = digits();
+            if (fraction == 0)
+                throw error("expected a digit after the decimal point");
+        }
+        int mantissaEnd = length;
+        int exponent = 0;
+        boolean hasExponent = peek() == 'e' || peek() == 'E';
+        if (hasExponent) {
+            append((char) take());
+            boolean negativeExponent = peek() == '-';
+            if (peek() == '+' || peek() == '-')
+                append((char) take());
+            int from = length;
+            int count = digits();
+            if (count == 0)
+                throw error("expected a digit in the exponent");
+            // a longer exponent is left to parseDouble
+            for (int i = from; i < length && i < from + 4; i++)
+                exponent = exponent * 10 + (chars[i] - '0');
+            if (count > 4)
+                exponent = 10000;
+            if (negativeExponent)
+                exponent = -exponent;
+        }
+        if (fraction == 0 && !hasExponent) {
+            if (whole > 18)
+                return Arithmetic.normalize(new BigInteger(new String(chars, 0, length)));
+            long value = 0;
+            for (int i = first; i < length; i++)
+                value = value * 10 + (chars[i] - '0');
+            return Arithmetic.box(negative ? -value : value);
+        }
+        int scale = exponent - fraction;
+        if (whole + fraction <= 15 && scale >= -22 && scale <= 22) {
+            long digits = 0;
+            for (int i = first; i < mantissaEnd; i++) {
+                if (chars[i] != '.')
+                    digits = digits * 10 + (chars[i] - '0');
+            }
+            // both are exact doubles, so the one operation rounds like parsing the text
+            double value = scale < 0 ? digits / POWERS[-scale] : digits * POWERS[scale];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(chars, 0, length));
+    }
+
+    private int digits() {
+        int count = 0;
+        while (position < limit || refill()) {
+            byte b = bytes[position];
+            if (b < '0' || b > '9')
+                break;
+            append((char) b);
+            position++;
+            count++;
+        }
+        return count;
+    }
+
+    private void literal(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            int c = take();
+            if (c != word.charAt(i))
+                throw unexpected(c);
+        }
+    }
+
+    private int skipWhitespace() {
+        while (position < limit || refill()) {
+            byte b = bytes[position];
+            if (b == '\n') {
+                position++;
+                line++;
+                lineStart = offset();
+            } else if (b == ' ' || b == '\t' || b == '\r') {
+                position++;
+            } else {
+                return b & 0xFF;
+            }
+        }
+        return -1;
+    }
+    // the next byte, -1 at the end
+    private int peek() {
+        if (position == limit && !refill())
+            return -1;
+        return bytes[position] & 0xFF;
+    }
+
+    private int take() {
+        if (position == limit && !refill())
+            return -1;
+        return bytes[position++] & 0xFF;
+    }
+    // reads the block after the one read to the end, which is let go
+    private boolean refill() {
+        if (file == null)
+            return false;
+        blockStart += limit;
+        position = 0;
+        limit = 0;
+        try {
+            ByteBuffer block = ByteBuffer.wrap(bytes);
+            int read;
+            do {
+                read = file.read(block);
+            } while (read == 0);
+            limit = Math.max(block.position(), 0);
+        } catch (IOException e) {
+            throw RubyIO.error(e, name);
+        }
+        return limit > 0;
+    }
+
+    private long offset() {
+        return blockStart + position;
+    }
+
+    private RuntimeError unexpected(int c) {
+        if (c < 0)
+            return error("unexpected end of input");
+        String shown = c < 0x80 ? String.valueOf((char) c) : String.format("\\x%02X", c);
+        // the byte has been peeked, not taken, so the column is the one of the byte
+        return new RuntimeError("unexpected character: '" + shown + "' at line " + line + " column "
+                + (offset() - lineStart + 1) + " (JSON::ParserError)");
+    }
+
+    private RuntimeError error(String message) {
+        return new RuntimeError(message + " at line " + line + " column " + (offset() - lineStart + 1)
+                + " (JSON::ParserError)");
+    }
+}
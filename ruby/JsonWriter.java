@@ -0,0 +1,165 @@
+package ruby;
+
+import java.math.BigInteger;
+
+/*
+ * Ruby values as JSON text
+ * JSON.dump(value, io) writes into the output sink of the IO, numbers
+ * formatted straight into its buffer and strings escaped a run of plain
+ * chars at a time, so a document of any size goes out without being built
+ * first. JSON.generate writes the same text into a StringBuilder.
+ * Hash keys and Symbols become strings, nil null, and any other value the
+ * string of its to_s, as ruby's generic to_json does.
+ */
+final class JsonWriter {
+    private static final String HEX = "0123456789abcdef";
+
+    // one of the two is null
+    private final OutputSink sink;
+    private final StringBuilder builder;
+    // null for the compact form, the indent of one level for pretty_generate
+    private final String indent;
+
+    private JsonWriter(OutputSink sink, StringBuilder builder, String indent) {
+        this.sink = sink;
+        this.builder = builder;
+        this.indent = indent;
+    }
+
+    static String generate(Object value, boolean pretty) {
+        StringBuilder builder = new StringBuilder();
+        new JsonWriter(null, builder, pretty ? "  " : null).value(value, 0);
+        return builder.toString();
+    }
+
+    static void write(OutputSink sink, Object value) {
+        new JsonWriter(sink, null, null).value(value, 0);
+    }
+
+    private void value(Object value, int level) {
+        if (value == null) {
+            put("null");
+        } else if (value instanceof Boolean) {
+            put(value.toString());
+        } else if (value instanceof Long) {
+            if (sink != null)
+                sink.write((long) (Long) value);
+            else
+                builder.append((long) (Long) value);
+        } else if (value instanceof Double) {
+            double number = (Double) value;
+            if (Double.isNaN(number) || Double.isInfinite(number))
+                throw new RuntimeError(NumberFormatter.toString(number) + " not allowed in JSON (JSON::GeneratorError)");
+            if (sink != null)
+                sink.write(number);
+            else
+                builder.append(NumberFormatter.toString(number));
+        } else if (value instanceof BigInteger) {
+            put(value.toString());
+        } else if (value instanceof RubyArray) {
+            array((RubyArray) value, level);
+        } else if (value instanceof RubyHash) {
+            object((RubyHash) value, level);
+        } else {
+            string(value instanceof CharSequence ? (CharSequence) value : Builtins.stringify(value));
+        }
+    }
+
+    private void array(RubyArray array, int level) {
+        if (array.size() == 0) {
+            put("[]");
+            return;
+        }
+        put("[");
+        for (int i = 0; i < array.size(); i++) {
+            if (i > 0)
+                put(",");
+            newline(level + 1);
+            value(array.at(i), level + 1);
+        }
+        newline(level);
+        put("]");
+    }
+
+    private void object(RubyHash hash, int level) {
+        if (hash.size() == 0) {
+            put("{}");
+            return;
+        }
+        put("{");
+        boolean first = true;
+        for (int entry = hash.next(-1); entry >= 0; entry = hash.next(entry)) {
+            if (!first)
+                put(",");
+            first = false;
+            newline(level + 1);
+            Object key = hash.keyAt(entry);
+            string(key instanceof CharSequence ? (CharSequence) key : Builtins.stringify(key));
+            put(indent == null ? ":" : ": ");
+            value(hash.valueAt(entry), level + 1);
+        }
+        newline(level);
+        put("}");
+    }
+
+    private void newline(int level) {
+        if (indent == null)
+            return;
+        put("\n");
+        for (int i = 0; i < level; i++)
+            put(indent);
+    }
+    // quoted, with the quote, the backslash and the control chars escaped
+    private void string(CharSequence text) {
+        put("\"");
+        int run = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\')
+                continue;
+            put(text, run, i);
+            run = i + 1;
+            switch (c) {
+                case '"':
+                    put("\\\"");
+                    break;
+                case '\\':
+                    put("\\\\");
+                    break;
+                case '\n':
+                    put("\\n");
+                    break;
+                case '\r':
+                    put("\\r");
+                    break;
+                case '\t':
+                    put("\\t");
+                    break;
+                case '\b':
+                    put("\\b");
+                    break;
+                case '\f':
+                    put("\\f");
+                    break;
+                default:
+                    put("\\u00");
+                    put(HEX, c >> 4, (c >> 4) + 1);
+                    put(HEX, c & 0xF, (c & 0xF) + 1);
+                    break;
+            }
+        }
+        put(text, run, text.length());
+        put("\"");
+    }
+
+    private void put(CharSequence text) {
+        put(text, 0, text.length());
+    }
+
+    private void put(CharSequence text, int start, int end) {
+        if (sink != null)
+            sink.write(text, start, end);
+        else
+            builder.append(text, start, end);
+    }
+}
@@ -0,0 +1,64 @@
+package ruby;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Kernel, the functions every script can call by name
+ */
+final class KernelModule {
+    private KernelModule() {
+    }
+    // seconds since the epoch, for timing scripts
+    @Native
+    static double clock() {
+        return (double) System.currentTimeMillis() / 1000.0;
+    }
+    // an Integer in 0...max, a Float in [0, 1) for rand(0)
+    @Native
+    static Object rand(long max) {
+        if (max == 0)
+            return ThreadLocalRandom.current().nextDouble();
+        return Arithmetic.box(ThreadLocalRandom.current().nextLong(Math.abs(max)));
+    }
+
+    // what was printed so far shows up before the pause
+    @Native
+    static long sleep(Interpreter interpreter, double seconds) {
+        if (seconds < 0)
+            throw new RuntimeError("time interval must not be negative");
+        interpreter.out.flush();
+        long start = System.nanoTime();
+        try {
+            Thread.sleep((long) (seconds * 1000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Math.round((System.nanoTime() - start) / 1e9);
+    }
+    // the next line of STDIN, also kept in $_, nil at the end
+    @Native
+    static RubyString gets(Interpreter interpreter) {
+        return interpreter.gets();
+    }
+    // block_given?(), true inside a method that was called with a block
+    @Native("block_given?")
+    static boolean blockGiven(Interpreter interpreter) {
+        return interpreter.block != null;
+    }
+    // memoize :name, caches the results of a pure function
+    @Native
+    static Symbol memoize(Interpreter interpreter, Symbol name) {
+        return interpreter.memoize(name);
+    }
+
+    @Native
+    static RubyHash memo_stats(Interpreter interpreter, Symbol name) {
+        return interpreter.memoized(name).stats();
+    }
+
+    @Native
+    static Symbol memo_clear(Interpreter interpreter, Symbol name) {
+        interpreter.memoized(name).clear();
+        return name;
+    }
+}
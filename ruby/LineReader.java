@@ -0,0 +1,176 @@
+package ruby;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Lines of a file or a stream, read in big blocks
+ * A regular file is memory mapped a window at a time, the lines are found by
+ * scanning the mapped bytes for '\n' and the window is moved on to the first
+ * line it does not hold in full. A stream (stdin, a pipe) is read into one
+ * large buffer the same way. Either way the reader holds at most a window,
+ * so a file of any size is read line by line in constant memory.
+ * A line is decoded straight from the window into the chars of its
+ * RubyString; pure ASCII lines, the usual case for logs, are widened byte by
+ * byte and only a line with other bytes goes through the UTF-8 decoder.
+ */
+final class LineReader {
+    private static final int WINDOW = 1 << 26;
+    private static final int BUFFER = 1 << 16;
+    // what one window or buffer can hold
+    private static final int MAX_LINE = Integer.MAX_VALUE - 8;
+
+    // null when reading a stream
+    private final FileChannel file;
+    private final ReadableByteChannel channel;
+    private final long size;
+    private ByteBuffer window;
+    // file position of the start of the window
+    private long windowStart;
+    private boolean eof;
+    // the line found by advance, in the window
+    private int lineStart;
+    private int lineEnd;
+
+    private LineReader(FileChannel file, ReadableByteChannel channel, long size) {
+        this.file = file;
+        this.channel = channel;
+        this.size = size;
+    }
+    // a mapped reader for a regular file
+    static LineReader mapped(FileChannel file) throws IOException {
+        LineReader reader = new LineReader(file, file, file.size());
+        reader.window = ByteBuffer.allocate(0);
+        return reader;
+    }
+    // a buffered reader for a stream
+    static LineReader stream(ReadableByteChannel channel) {
+        LineReader reader = new LineReader(null, channel, -1);
+        reader.window = ByteBuffer.allocate(BUFFER).flip();
+        return reader;
+    }
+    // a reader over bytes already in memory, CSV.parse(text)
+    static LineReader of(byte[] bytes) {
+        LineReader reader = new LineReader(null, null, -1);
+        reader.window = ByteBuffer.wrap(bytes);
+        reader.eof = true;
+        return reader;
+    }
+    // the next line with its "\n", null at the end
+    RubyString readLine() throws IOException {
+        return advance() ? decode(lineStart, lineEnd) : null;
+    }
+    /*
+     * Moves on to the next line and leaves it undecoded in the window, at
+     * lineStart() to lineEnd() with its "\n". false at the end.
+     * CSV reads its fields from there, see CsvReader.
+     */
+    boolean advance() throws IOException {
+        // bytes of the line already scanned, not scanned again after a refill
+        int scanned = 0;
+        while (true) {
+            int start = window.position();
+            int limit = window.limit();
+            for (int i = start + scanned; i < limit; i++) {
+                if (window.get(i) == '\n')
+                    return found(start, i + 1);
+            }
+            scanned = limit - start;
+            if (!refill()) {
+                // the last line has no "\n", a stream has moved it to the start of its buffer
+                start = window.position();
+                limit = window.limit();
+                return start < limit && found(start, limit);
+            }
+        }
+    }
+
+    private boolean found(int start, int end) {
+        lineStart = start;
+        lineEnd = end;
+        window.position(end);
+        return true;
+    }
+
+    int lineStart() {
+        return lineStart;
+    }
+
+    int lineEnd() {
+        return lineEnd;
+    }
+
+    byte byteAt(int index) {
+        return window.get(index);
+    }
+    // everything that is left
+    RubyString readAll() throws IOException {
+        while (refill()) {
+            // a stream keeps what it has and reads on, a file maps the rest
+        }
+        int start = window.position();
+        window.position(window.limit());
+        return decode(start, window.limit());
+    }
+
+    boolean atEnd() throws IOException {
+        return !window.hasRemaining() && !refill();
+    }
+
+    /*
+     * Makes room for more of the current line, which keeps its bytes from the
+     * window's position on. false at the end of the input.
+     */
+    private boolean refill() throws IOException {
+        int pending = window.remaining();
+        if (pending >= MAX_LINE)
+            throw new RuntimeError("line too long, over " + MAX_LINE + " bytes");
+        if (file != null) {
+            long from = windowStart + window.position();
+            if (from + pending >= size)
+                return false;
+            // a line longer than a window gets a bigger one
+            long length = Math.min(Math.max(WINDOW, 2L * pending), size - from);
+            window = file.map(FileChannel.MapMode.READ_ONLY, from, Math.min(length, MAX_LINE));
+            windowStart = from;
+            return true;
+        }
+        if (eof)
+            return false;
+        window.compact();
+        if (!window.hasRemaining()) {
+            ByteBuffer grown = ByteBuffer.allocate((int) Math.min(2L * window.capacity(), MAX_LINE));
+            window.flip();
+            grown.put(window);
+            window = grown;
+        }
+        int read;
+        do {
+            read = channel.read(window);
+        } while (read == 0);
+        window.flip();
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        return true;
+    }
+
+    // the bytes from start to end of the window as a String
+    RubyString decode(int start, int end) {
+        int length = end - start;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            byte b = window.get(start + i);
+            if (b < 0) {
+                ByteBuffer bytes = window.duplicate().position(start).limit(end);
+                return new RubyString(StandardCharsets.UTF_8.decode(bytes).toString());
+            }
+            chars[i] = (char) b;
+        }
+        return RubyString.wrap(chars, length);
+    }
+}
@@ -0,0 +1,81 @@
+package ruby;
+
+/*
+ * Math, the floating point functions
+ * Math.sqrt is also an intrinsic, see Intrinsic.
+ */
+final class MathModule {
+    @Native
+    static final double PI = Math.PI;
+    @Native
+    static final double E = Math.E;
+
+    private MathModule() {
+    }
+
+    @Native
+    static double sqrt(double x) {
+        return Math.sqrt(domain("sqrt", x, x >= 0 || Double.isNaN(x)));
+    }
+
+    @Native
+    static double cbrt(double x) {
+        return Math.cbrt(x);
+    }
+
+    @Native
+    static double sin(double x) {
+        return Math.sin(x);
+    }
+
+    @Native
+    static double cos(double x) {
+        return Math.cos(x);
+    }
+
+    @Native
+    static double tan(double x) {
+        return Math.tan(x);
+    }
+
+    @Native
+    static double atan(double x) {
+        return Math.atan(x);
+    }
+
+    @Native
+    static double atan2(double y, double x) {
+        return Math.atan2(y, x);
+    }
+
+    @Native
+    static double exp(double x) {
+        return Math.exp(x);
+    }
+
+    @Native
+    static double log(double x) {
+        return Math.log(domain("log", x, x >= 0 || Double.isNaN(x)));
+    }
+
+    @Native
+    static double log2(double x) {
+        return Math.log(domain("log2", x, x >= 0 || Double.isNaN(x))) / Math.log(2);
+    }
+
+    @Native
+    static double log10(double x) {
+        return Math.log10(domain("log10", x, x >= 0 || Double.isNaN(x)));
+    }
+
+    @Native
+    static double hypot(double x, double y) {
+        return Math.hypot(x, y);
+    }
+    // ruby raises Math::DomainError where java would quietly give NaN
+    private static double domain(String function, double x, boolean inDomain) {
+        if (!inDomain)
+            throw new RuntimeError("Numerical argument is out of domain - \"" + function + "\"");
+        return x;
+    }
+}
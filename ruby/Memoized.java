@@ -0,0 +1,138 @@
+package ruby;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * A function with a cache of its results, made by memoize :name
+ * A single argument is its own key, more arguments are keyed by the list of
+ * them. The cache is an LRU map holding at most --memo-size results, so a
+ * DP style function over a big input keeps the recent results instead of
+ * growing without bound.
+ * Meant for pure functions, the body only runs for arguments it has not
+ * seen (or has forgotten), so its side effects happen once per key.
+ */
+final class Memoized implements RubyCallable {
+    // nil results are stored as this, a null from the map means not cached
+    private static final Object NIL = new Object();
+    private static final Object NO_ARGUMENTS = new Object();
+
+    final Symbol name;
+    private final RubyFunction function;
+    private final int capacity;
+    private final Map<Object, Object> results;
+    private long hits;
+    private long misses;
+
+    Memoized(Symbol name, RubyFunction function, int capacity) {
+        this.name = name;
+        this.function = function;
+        this.capacity = capacity;
+        this.results = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                return size() > Memoized.this.capacity;
+            }
+        };
+    }
+
+    @Override
+    public int arity() {
+        return function.arity();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        List<Object> key = new ArrayList<>(arguments.size());
+        for (Object argument : arguments)
+            key.add(key(argument));
+        Object cached = cached(key);
+        if (cached != null)
+            return unwrap(cached);
+        return remember(key, function.call(interpreter, arguments));
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        Object cached = cached(NO_ARGUMENTS);
+        if (cached != null)
+            return unwrap(cached);
+        return remember(NO_ARGUMENTS, function.call0(interpreter));
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        Object key = key(a);
+        Object cached = cached(key);
+        if (cached != null)
+            return unwrap(cached);
+        return remember(key, function.call1(interpreter, a));
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        Object key = Arrays.asList(key(a), key(b));
+        Object cached = cached(key);
+        if (cached != null)
+            return unwrap(cached);
+        return remember(key, function.call2(interpreter, a, b));
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        Object key = Arrays.asList(key(a), key(b), key(c));
+        Object cached = cached(key);
+        if (cached != null)
+            return unwrap(cached);
+        return remember(key, function.call3(interpreter, a, b, c));
+    }
+    // strings and arrays are copied so changing the argument later can't change the key
+    private static Object key(Object argument) {
+        if (argument instanceof RubyString)
+            return new RubyString(argument.toString());
+        if (argument instanceof RubyArray)
+            return ((RubyArray) argument).copy();
+        return argument;
+    }
+
+    private Object cached(Object key) {
+        Object cached = results.get(key);
+        if (cached != null)
+            hits++;
+        else
+            misses++;
+        return cached;
+    }
+
+    private Object remember(Object key, Object result) {
+        results.put(key, result == null ? NIL : result);
+        return result;
+    }
+
+    private static Object unwrap(Object cached) {
+        return cached == NIL ? null : cached;
+    }
+    // memo_stats(:name), {hits: 3, misses: 2, size: 2, capacity: 10000}
+    RubyHash stats() {
+        RubyHash stats = new RubyHash();
+        stats.put(Symbol.intern("hits"), Arithmetic.box(hits));
+        stats.put(Symbol.intern("misses"), Arithmetic.box(misses));
+        stats.put(Symbol.intern("size"), Arithmetic.box(results.size()));
+        stats.put(Symbol.intern("capacity"), Arithmetic.box(capacity));
+        return stats;
+    }
+    // memo_clear(:name), forgets the results and starts counting again
+    void clear() {
+        results.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
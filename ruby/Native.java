@@ -0,0 +1,18 @@
+package ruby;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/*
+ * Marks a static method of a native module as a ruby function, or a static
+ * field as a constant of the module. The ruby name defaults to the java name,
+ * value gives it when ruby wants one java can't have, like even?.
+ * Natives collects them and binds each method once through a MethodHandle.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.FIELD })
+@interface Native {
+    String value() default "";
+}
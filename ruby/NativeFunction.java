@@ -0,0 +1,110 @@
+package ruby;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * A function implemented in java, bound by Natives
+ * The handle already converts the arguments to the java parameter types and
+ * the result back to a ruby value, and has been adapted to take the
+ * interpreter and plain Objects. call0..call3 can therefore use invokeExact,
+ * which the JIT compiles down to a direct call of the java method.
+ */
+final class NativeFunction implements RubyCallable {
+    final Symbol name;
+    private final int arity;
+    private final MethodHandle handle;
+    // the function of the same name with another arity, set by RubyModule.define
+    NativeFunction overload;
+
+    NativeFunction(Symbol name, MethodHandle handle) {
+        this.name = name;
+        this.arity = handle.type().parameterCount() - 1;
+        this.handle = handle;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        try {
+            Object[] all = new Object[arguments.size() + 1];
+            all[0] = interpreter;
+            for (int i = 0; i < arguments.size(); i++)
+                all[i + 1] = arguments.get(i);
+            return handle.invokeWithArguments(all);
+        } catch (Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        try {
+            return (Object) handle.invokeExact(interpreter);
+        } catch (Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        try {
+            return (Object) handle.invokeExact(interpreter, a);
+        } catch (Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        try {
+            return (Object) handle.invokeExact(interpreter, a, b);
+        } catch (Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        try {
+            return (Object) handle.invokeExact(interpreter, a, b, c);
+        } catch (Throwable error) {
+            throw rethrow(error);
+        }
+    }
+    // a native method of a builtin value, the receiver goes first
+    Object callOn(Interpreter interpreter, Object receiver, List<Object> arguments) {
+        switch (arguments.size()) {
+            case 0:
+                return call1(interpreter, receiver);
+            case 1:
+                return call2(interpreter, receiver, arguments.get(0));
+            case 2:
+                return call3(interpreter, receiver, arguments.get(0), arguments.get(1));
+            default:
+                Object[] all = new Object[arguments.size() + 1];
+                all[0] = receiver;
+                for (int i = 0; i < arguments.size(); i++)
+                    all[i + 1] = arguments.get(i);
+                return call(interpreter, Arrays.asList(all));
+        }
+    }
+    // ruby errors pass through, anything else the java method threw becomes one
+    private static RuntimeException rethrow(Throwable error) {
+        if (error instanceof RuntimeException)
+            return (RuntimeException) error;
+        if (error instanceof Error)
+            throw (Error) error;
+        return new RuntimeError(error.toString());
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
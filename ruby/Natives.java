@@ -0,0 +1,190 @@
+package ruby;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+
+/*
+ * The registry of native modules
+ * Every static method of a module class marked @Native is bound once, here,
+ * to a MethodHandle. Filters are put in front of its parameters to turn ruby
+ * values into the declared java types (long, double, RubyString, Symbol or
+ * Object), a leading Interpreter parameter is passed the running interpreter
+ * and behind the result to turn it back into a ruby value. The handle is
+ * then adapted to Objects only, so the function can be called through
+ * invokeExact with no reflection left at call time.
+ */
+final class Natives {
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    static final RubyModule KERNEL = module("Kernel", KernelModule.class);
+    static final RubyModule MATH = module("Math", MathModule.class);
+    static final RubyModule FILE = module("File", FileModule.class);
+    static final RubyModule CSV = module("CSV", CsvModule.class);
+    static final RubyModule JSON = module("JSON", JsonModule.class);
+    // native methods of the builtin values, the receiver is the first argument
+    static final RubyModule INTEGER = module("Integer", IntegerModule.class);
+    static final RubyModule FLOAT = module("Float", FloatModule.class);
+    static final RubyModule STRING = module("String", StringModule.class);
+    static final RubyModule IO = module("IO", IOModule.class);
+    static final RubyModule CSV_WRITER = module("CSV", CsvWriterModule.class);
+
+    private Natives() {
+    }
+    // Kernel functions are globals, the modules are constants
+    static void install(Environment globals) {
+        for (NativeFunction function : KERNEL.functions())
+            globals.define(function.name, function);
+        globals.define(Symbol.intern(KERNEL.name), KERNEL);
+        globals.define(Symbol.intern(MATH.name), MATH);
+        globals.define(Symbol.intern(FILE.name), FILE);
+        globals.define(Symbol.intern(CSV.name), CSV);
+        globals.define(Symbol.intern(JSON.name), JSON);
+    }
+    // the native method name of a builtin value, null when there is none
+    static NativeFunction method(Object receiver, Symbol name) {
+        RubyModule module;
+        if (receiver instanceof Long || receiver instanceof BigInteger)
+            module = INTEGER;
+        else if (receiver instanceof Double)
+            module = FLOAT;
+        else if (receiver instanceof RubyString)
+            module = STRING;
+        else if (receiver instanceof RubyIO)
+            module = IO;
+        else
+            return null;
+        return module.function(name);
+    }
+
+    private static RubyModule module(String name, Class<?> library) {
+        RubyModule module = new RubyModule(name);
+        try {
+            for (Method method : library.getDeclaredMethods()) {
+                Native annotation = method.getAnnotation(Native.class);
+                if (annotation != null)
+                    module.define(bind(rubyName(annotation, method.getName()), method));
+            }
+            for (Field field : library.getDeclaredFields()) {
+                Native annotation = field.getAnnotation(Native.class);
+                if (annotation != null)
+                    module.define(Symbol.intern(rubyName(annotation, field.getName())), field.get(null));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("can't bind native module " + name, e);
+        }
+        return module;
+    }
+
+    private static String rubyName(Native annotation, String javaName) {
+        return annotation.value().isEmpty() ? javaName : annotation.value();
+    }
+
+    private static NativeFunction bind(String name, Method method) throws IllegalAccessException {
+        if (!Modifier.isStatic(method.getModifiers()))
+            throw new IllegalStateException("native " + name + " must be static");
+        MethodHandle handle = lookup.unreflect(method);
+        Class<?>[] parameters = method.getParameterTypes();
+        // a native that wants the interpreter takes it first, the others get it dropped
+        boolean takesInterpreter = parameters.length > 0 && parameters[0] == Interpreter.class;
+        int first = takesInterpreter ? 1 : 0;
+        for (int i = first; i < parameters.length; i++) {
+            MethodHandle filter = argumentFilter(parameters[i]);
+            if (filter != null)
+                handle = MethodHandles.filterArguments(handle, i, filter);
+        }
+        MethodHandle result = resultFilter(method.getReturnType());
+        if (result != null)
+            handle = MethodHandles.filterReturnValue(handle, result);
+        if (!takesInterpreter)
+            handle = MethodHandles.dropArguments(handle, 0, Interpreter.class);
+        int arity = parameters.length - first;
+        MethodType type = MethodType.genericMethodType(arity).insertParameterTypes(0, Interpreter.class);
+        return new NativeFunction(Symbol.intern(name), handle.asType(type));
+    }
+    // ruby value -> java parameter, null when the value is passed as it is
+    private static MethodHandle argumentFilter(Class<?> type) throws IllegalAccessException {
+        if (type == long.class)
+            return converter("toLong", long.class);
+        if (type == double.class)
+            return converter("toDouble", double.class);
+        if (type == RubyString.class)
+            return converter("toRubyString", RubyString.class);
+        if (type == Symbol.class)
+            return converter("toSymbol", Symbol.class);
+        if (type == Object.class)
+            return null;
+        // the receiver of an IO or CSV native, the dispatch already checked its type
+        if (type == RubyIO.class || type == CsvWriter.class)
+            return null;
+        throw new IllegalStateException("natives can't take a " + type.getSimpleName());
+    }
+    // java result -> ruby value, null when no conversion is needed
+    private static MethodHandle resultFilter(Class<?> type) throws IllegalAccessException {
+        if (type == long.class)
+            return converter("box", Long.class, long.class);
+        if (type == String.class)
+            return converter("toRuby", RubyString.class, String.class);
+        return null;
+    }
+
+    private static MethodHandle converter(String name, Class<?> result) throws IllegalAccessException {
+        return converter(name, result, Object.class);
+    }
+
+    private static MethodHandle converter(String name, Class<?> result, Class<?> parameter)
+            throws IllegalAccessException {
+        try {
+            return lookup.findStatic(Natives.class, name, MethodType.methodType(result, parameter));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    /*
+     * The converters throw errors without a line,
+     * the call of the native gives them its own.
+     */
+    private static long toLong(Object value) {
+        if (value instanceof Long)
+            return (Long) value;
+        if (value instanceof BigInteger)
+            throw new RuntimeError("bignum too big to convert into 'long'");
+        if (value instanceof Double)
+            return (long) (double) (Double) value;
+        throw new RuntimeError("no implicit conversion of " + Builtins.typeName(value) + " into Integer");
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Long)
+            return (Long) value;
+        if (value instanceof Double || value instanceof BigInteger)
+            return ((Number) value).doubleValue();
+        throw new RuntimeError("can't convert " + Builtins.typeName(value) + " into Float");
+    }
+
+    private static RubyString toRubyString(Object value) {
+        if (value instanceof RubyString)
+            return (RubyString) value;
+        throw new RuntimeError("no implicit conversion of " + Builtins.typeName(value) + " into String");
+    }
+
+    private static Symbol toSymbol(Object value) {
+        if (value instanceof Symbol)
+            return (Symbol) value;
+        if (value instanceof RubyString)
+            return Symbol.intern(value.toString());
+        throw new RuntimeError(Builtins.inspect(value) + " is not a symbol nor a string");
+    }
+
+    private static Long box(long value) {
+        return Arithmetic.box(value);
+    }
+
+    private static RubyString toRuby(String value) {
+        return new RubyString(value);
+    }
+}
@@ -0,0 +1,271 @@
+package ruby;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Integers and Floats as ruby prints them, written as ASCII into a byte array
+ * The output sink formats into a scratch array it owns and copies the bytes
+ * into its buffer, so puts of a number allocates nothing. to_s and
+ * interpolation go through the same code and only make the String at the end.
+ *
+ * A Float is printed with the fewest digits that read back as the same
+ * double, in plain notation while the decimal point is within 16 digits of
+ * the first one, 1.0e+16 and 1.0e-05 outside of that, always with a digit
+ * after the point. Most doubles seen in scripts have few decimals and are
+ * found by scaling with a power of ten and checking the round trip; the rest
+ * go through Schubfach, which finds the shortest digits with long
+ * arithmetic and a table of powers of ten made once.
+ */
+final class NumberFormatter {
+    // longest output, a sign, 17 digits, a point, and e-308
+    static final int MAX_LENGTH = 32;
+    // 10^0 to 10^18, the ones that also fit a long
+    private static final double[] POWERS = new double[19];
+    // scaled values must stay exact integers in a double
+    private static final double EXACT = 1L << 53;
+    // value = c 2^q, c below 2^53, q from Q_MIN for the subnormals
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << 52;
+    private static final long MASK_63 = (1L << 63) - 1;
+    // the 10^-k used by shortest, g = floor(10^-k 2^-r) + 1 between 2^125 and
+    // 2^126 as two longs of 63 bits, g1 then g0, for k from K_MIN to K_MAX
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+    // the one long that has no positive counterpart
+    private static final byte[] MIN_LONG = "-9223372036854775808".getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        double power = 1;
+        for (int i = 0; i < POWERS.length; i++) {
+            POWERS[i] = power;
+            power *= 10;
+        }
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            BigInteger g;
+            if (k <= 0) {
+                BigInteger scale = BigInteger.TEN.pow(-k);
+                int r = scale.bitLength() - 126;
+                g = r >= 0 ? scale.shiftRight(r) : scale.shiftLeft(-r);
+            } else {
+                BigInteger scale = BigInteger.TEN.pow(k);
+                g = BigInteger.ONE.shiftLeft(125 + scale.bitLength()).divide(scale);
+            }
+            g = g.add(BigInteger.ONE);
+            G[(k - K_MIN) << 1] = g.shiftRight(63).longValue();
+            G[(k - K_MIN) << 1 | 1] = g.longValue() & MASK_63;
+        }
+    }
+
+    private NumberFormatter() {
+    }
+    // writes the digits of value at the start of into, returns how many bytes
+    static int format(long value, byte[] into) {
+        if (value == Long.MIN_VALUE) {
+            System.arraycopy(MIN_LONG, 0, into, 0, MIN_LONG.length);
+            return MIN_LONG.length;
+        }
+        int at = 0;
+        if (value < 0) {
+            into[at++] = '-';
+            value = -value;
+        }
+        return at + digits(value, into, at);
+    }
+    // the digits of a non negative value at into[at], returns how many
+    private static int digits(long value, byte[] into, int at) {
+        int count = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10)
+            count++;
+        for (int i = at + count - 1; i >= at; i--) {
+            into[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return count;
+    }
+
+    static int format(double value, byte[] into) {
+        if (Double.isNaN(value))
+            return copy("NaN", into, 0);
+        int at = 0;
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            into[at++] = '-';
+            value = -value;
+        }
+        if (Double.isInfinite(value))
+            return copy("Infinity", into, at);
+        if (value == 0)
+            return copy("0.0", into, at);
+        if (value >= 1e-4 && value < 1e15) {
+            int written = scaled(value, into, at);
+            if (written > 0)
+                return written;
+        }
+        return general(value, into, at);
+    }
+
+    static String toString(double value) {
+        byte[] bytes = new byte[MAX_LENGTH];
+        return new String(bytes, 0, format(value, bytes), StandardCharsets.US_ASCII);
+    }
+    /*
+     * value = m / 10^k for the smallest k that reads back exactly
+     * m and 10^k are exact doubles, so the division rounds the same way as
+     * parsing the decimal would. 0 when no k keeps m exact.
+     */
+    private static int scaled(double value, byte[] into, int at) {
+        for (int k = 0; k < POWERS.length; k++) {
+            double product = value * POWERS[k];
+            if (product >= EXACT)
+                return 0;
+            long m = Math.round(product);
+            if (m / POWERS[k] != value)
+                continue;
+            long whole = m / (long) POWERS[k];
+            long fraction = m % (long) POWERS[k];
+            int end = at + digits(whole, into, at);
+            into[end++] = '.';
+            if (k == 0) {
+                into[end++] = '0';
+                return end;
+            }
+            // the fraction with its leading zeros
+            for (int i = end + k - 1; i >= end; i--) {
+                into[i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            return end + k;
+        }
+        return 0;
+    }
+    /*
+     * Schubfach, R. Giulietti, "The Schubfach way to render doubles"
+     * value = c 2^q, the shortest decimal inside the interval of the reals
+     * that read back as value, the closest one to value when several are as
+     * short. The interval ends are worked out from c 2^q scaled by 10^-k,
+     * a 126 bit g of the table times 2^r, in longs only.
+     */
+    private static int general(double value, byte[] into, int at) {
+        long bits = Double.doubleToRawLongBits(value);
+        long t = bits & (C_MIN - 1);
+        int bq = (int) (bits >>> 52) & 0x7FF;
+        if (bq == 0)
+            return shortest(Q_MIN, t, into, at);
+        int mq = -Q_MIN + 1 - bq;
+        long c = C_MIN | t;
+        // an integer below 2^53 is its own shortest decimal
+        if (mq > 0 && mq < 53) {
+            long f = c >> mq;
+            if (f << mq == c)
+                return layout(f, 0, into, at);
+        }
+        return shortest(-mq, c, into, at);
+    }
+
+    private static int shortest(int q, long c, byte[] into, int at) {
+        int out = (int) c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        // below a power of two the interval is narrower on the left
+        if (c != C_MIN || q == Q_MIN) {
+            cbl = cb - 2;
+            k = (int) (q * 661_971_961_083L >> 41);
+        } else {
+            cbl = cb - 1;
+            k = (int) (q * 661_971_961_083L - 274_743_187_321L >> 41);
+        }
+        int h = q + (int) (-k * 913_124_641_741L >> 38) + 2;
+        long g1 = G[(k - K_MIN) << 1];
+        long g0 = G[(k - K_MIN) << 1 | 1];
+        long vb = scale(g1, g0, cb << h);
+        long vbl = scale(g1, g0, cbl << h);
+        long vbr = scale(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 10) {
+            // one digit less, when just one of the two candidates is inside
+            long sp10 = s / 10 * 10;
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin)
+                return layout(upin ? sp10 : tp10, k, into, at);
+        }
+        long next = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (next << 2) + out <= vbr;
+        if (uin != win)
+            return layout(uin ? s : next, k, into, at);
+        // both are inside, the closer one, the even one on a tie
+        long cmp = vb - (s + next << 1);
+        return layout(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : next, k, into, at);
+    }
+    // cp g 2^-127 rounded to odd, g = g1 2^63 + g0
+    private static long scale(long g1, long g0, long cp) {
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+    /*
+     * f 10^e laid out the ruby way, written in place: the digits go to
+     * into[at] first and are moved along to make room for the point
+     */
+    private static int layout(long f, int e, byte[] into, int at) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+        int count = digits(f, into, at);
+        int end = at + count;
+        // where the decimal point goes, counted in digits from the first one
+        int point = count + e;
+        if (point > 0 && point <= 16) {
+            if (count <= point) {
+                while (end < at + point)
+                    into[end++] = '0';
+                into[end++] = '.';
+                into[end++] = '0';
+                return end;
+            }
+            System.arraycopy(into, at + point, into, at + point + 1, count - point);
+            into[at + point] = '.';
+            return end + 1;
+        }
+        if (point <= 0 && point > -4) {
+            int shift = 2 - point;
+            System.arraycopy(into, at, into, at + shift, count);
+            into[at] = '0';
+            into[at + 1] = '.';
+            for (int i = at + 2; i < at + shift; i++)
+                into[i] = '0';
+            return end + shift;
+        }
+        if (count == 1) {
+            into[end++] = '.';
+            into[end++] = '0';
+        } else {
+            System.arraycopy(into, at + 1, into, at + 2, count - 1);
+            into[at + 1] = '.';
+            end++;
+        }
+        int exponent = point - 1;
+        into[end++] = 'e';
+        into[end++] = (byte) (exponent < 0 ? '-' : '+');
+        exponent = Math.abs(exponent);
+        if (exponent < 10)
+            into[end++] = '0';
+        return end + digits(exponent, into, end);
+    }
+
+    private static int copy(String text, byte[] into, int at) {
+        for (int i = 0; i < text.length(); i++)
+            into[at + i] = (byte) text.charAt(i);
+        return at + text.length();
+    }
+}
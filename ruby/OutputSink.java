@@ -0,0 +1,173 @@
+package ruby;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/*
+ * Where print and puts write to
+ * System.out is a synchronized PrintStream that encodes every string on its
+ * own and flushes on every println, so printing a line costs a lock and a
+ * write syscall. The sink instead encodes straight into one big buffer and
+ * hands it to the channel in a single write when it is due:
+ *   line  after every line, what a terminal wants
+ *   full  only when the buffer is full, for pipes and files
+ *   auto  line on a terminal, full otherwise
+ * Whatever is left is always written at exit and before an error is reported,
+ * so stdout and stderr keep their order.
+ */
+final class OutputSink {
+    enum Flush {
+        LINE, FULL, AUTO
+    }
+
+    /*
+     * The reader of stdout went away, as in ruby script.rb | head -2
+     * The script is stopped without a report, as a process ends on SIGPIPE.
+     */
+    static final class Closed extends RuntimeException {
+        Closed() {
+            super("Broken pipe", null, false, false);
+        }
+    }
+
+    private static final int CAPACITY = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(CAPACITY);
+    // numbers are formatted here and then copied into the buffer
+    private final byte[] scratch = new byte[NumberFormatter.MAX_LENGTH];
+    private boolean lineBuffered;
+    // a newline went into the buffer since the last flush
+    private boolean newline;
+    // bytes handed to the channel so far
+    private long written;
+    // the stdout sink stops the script on a broken pipe, once it did it drops what is written
+    private final boolean stdout;
+    private boolean closed;
+
+    OutputSink(WritableByteChannel channel, Flush policy) {
+        this(channel, policy, false);
+    }
+
+    private OutputSink(WritableByteChannel channel, Flush policy, boolean stdout) {
+        this.channel = channel;
+        this.stdout = stdout;
+        policy(policy);
+    }
+    // the sink of the interpreter, on the stdout file descriptor
+    static OutputSink stdout() {
+        return new OutputSink(new FileOutputStream(FileDescriptor.out).getChannel(), Flush.AUTO, true);
+    }
+
+    void policy(Flush policy) {
+        if (policy == Flush.AUTO)
+            lineBuffered = System.console() != null;
+        else
+            lineBuffered = policy == Flush.LINE;
+    }
+    // the text, encoded as UTF-8
+    OutputSink write(CharSequence text) {
+        return write(text, 0, text.length());
+    }
+    // the chars of text from start to end
+    OutputSink write(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                put((byte) c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+            } else {
+                // a lone surrogate can't be encoded, '?' like the JDK encoders
+                writeCodePoint(Character.isSurrogate(c) ? '?' : c);
+            }
+        }
+        return this;
+    }
+
+    // an Integer, in decimal
+    OutputSink write(long value) {
+        return put(scratch, NumberFormatter.format(value, scratch));
+    }
+    // a Float, the way ruby prints it
+    OutputSink write(double value) {
+        return put(scratch, NumberFormatter.format(value, scratch));
+    }
+
+    private OutputSink put(byte[] bytes, int length) {
+        if (buffer.remaining() < length)
+            drain();
+        buffer.put(bytes, 0, length);
+        return this;
+    }
+
+    OutputSink newline() {
+        put((byte) '\n');
+        return this;
+    }
+
+    private void writeCodePoint(int code) {
+        if (code < 0x800) {
+            put((byte) (0xC0 | code >> 6));
+        } else {
+            if (code < 0x10000) {
+                put((byte) (0xE0 | code >> 12));
+            } else {
+                put((byte) (0xF0 | code >> 18));
+                put((byte) (0x80 | (code >> 12 & 0x3F)));
+            }
+            put((byte) (0x80 | (code >> 6 & 0x3F)));
+        }
+        put((byte) (0x80 | (code & 0x3F)));
+    }
+
+    private void put(byte b) {
+        if (!buffer.hasRemaining())
+            drain();
+        buffer.put(b);
+        if (b == '\n')
+            newline = true;
+    }
+    // called once a print statement is done, a line buffered sink writes its lines now
+    void done() {
+        if (newline && lineBuffered)
+            flush();
+    }
+
+    // before the script waits for input, so a prompt without a newline shows on a terminal
+    void prompt() {
+        if (lineBuffered)
+            flush();
+    }
+
+    void flush() {
+        newline = false;
+        if (buffer.position() > 0)
+            drain();
+    }
+
+    // bytes written to the sink so far, flushed or not
+    long written() {
+        return written + buffer.position();
+    }
+
+    private void drain() {
+        buffer.flip();
+        try {
+            while (!closed && buffer.hasRemaining())
+                written += channel.write(buffer);
+        } catch (IOException e) {
+            if (!"Broken pipe".equals(e.getMessage()))
+                throw new RuntimeError(e.getMessage());
+            if (!stdout)
+                throw new RuntimeError("Broken pipe (Errno::EPIPE)");
+            closed = true;
+            throw new Closed();
+        } finally {
+            buffer.clear();
+        }
+    }
+}
@@ -14,6 +14,13 @@ public class Parser {
    */
   private final List<Token> tokens;
   private int current = 0;
+  // name and parameters of the def being parsed, for a bare super
+  private Token functionName;
+  private List<Token> functionParams;
+  // inside { } blocks a statement may also end at the closing brace
+  private int braceBlocks = 0;
+  // while parsing a loop condition do belongs to the loop, not to a block
+  private int loopConditions = 0;
   /*
    * The parser is initialized with the list of tokens 
    * to be parsed
@@ -90,7 +97,7 @@ public class Parser {
    */
   private Expr equality() {
     Expr expr = comparison();
-    while (match(BANG_EQUAL, EQUAL_EQUAL)) {
+    while (match(BANG_EQUAL, EQUAL_EQUAL, EQUAL_EQUAL_EQUAL, EQUAL_TILDE, BANG_TILDE)) {
       Token operator = previous();
       Expr right = comparison();
       expr = new Expr.Binary(expr, operator, right);
@@ -103,10 +110,10 @@ public class Parser {
    * Also go deeper into the recursive decent 
    */
   private Expr comparison() {
-    Expr expr = term();
+    Expr expr = shift();
     while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL, DOT_DOT, DOT_DOT_DOT)) {
       Token operator = previous();
-      Expr right = term();
+      Expr right = shift();
       if (operator.type == DOT_DOT_DOT) {
         expr = new Expr.Range(expr, right, false);
       } 
@@ -119,6 +126,19 @@ public class Parser {
     }
     return expr;
   }
+  /*
+   * << and >>, binds tighter than comparison
+   * << also appends to strings
+   */
+  private Expr shift() {
+    Expr expr = term();
+    while (match(LEFT_SHIFT, RIGHT_SHIFT)) {
+      Token operator = previous();
+      Expr right = term();
+      expr = new Expr.Binary(expr, operator, right);
+    }
+    return expr;
+  }
   /*
    * Identifies the specified operator in the 
    * match function and return a expression
@@ -182,6 +202,11 @@ public class Parser {
     List<Expr> arguments = new ArrayList<>();
     if (!check(RIGHT_PAREN)) {
       do {
+        // trailing name: value pairs are one hash argument, CSV.parse(text, col_sep: ";")
+        if (check(IDENTIFIER) && superPeek().type == COLON) {
+          arguments.add(keywordArguments());
+          break;
+        }
         arguments.add(expression());
       } while (match(COMMA));
     }
@@ -195,12 +220,134 @@ public class Parser {
     while (true) {
       if (match(LEFT_PAREN)) {
         expr = finishCall(expr);
+      } else if (match(LEFT_SQUARE)) {
+        Token bracket = previous();
+        Expr index = expression();
+        consume(RIGHT_SQUARE, "Expect ']' after index.");
+        expr = new Expr.Index(expr, bracket, index);
+      } else if (match(DOT)) {
+        // value.name or value.name(arguments)
+        Token name = methodName();
+        expr = new Expr.Get(expr, name);
+        if (match(LEFT_PAREN)) {
+          expr = finishCall(expr);
+        }
+      } else if (startsBlock(expr)) {
+        expr = blockCall(expr);
+      } else if (match(COLON_COLON)) {
+        // Module::NAME, a constant of a native module
+        Token name = consume(IDENTIFIER, "Expect constant name after '::'.");
+        expr = new Expr.Get(expr, name);
       } else {
         break;
       } 
     }
     return expr;
   }
+  private Expr commandCall(Token name) {
+    List<Expr> arguments = new ArrayList<>();
+    do {
+      arguments.add(expression());
+    } while (match(COMMA));
+    return new Expr.Call(new Expr.Variable(name), name, arguments);
+  }
+  // a do or { after a call, a method name or a bare name starts its block
+  private boolean startsBlock(Expr expr) {
+    if (expr instanceof Expr.Call && ((Expr.Call) expr).block != null)
+      return false;
+    if (!(expr instanceof Expr.Call || expr instanceof Expr.Get || expr instanceof Expr.Variable))
+      return false;
+    return check(LEFT_BRACE) || (check(DO) && loopConditions == 0);
+  }
+  // name(arguments) do |params| ... end, or the same with { }
+  private Expr blockCall(Expr expr) {
+    Expr.Block block = blockLiteral();
+    if (expr instanceof Expr.Call) {
+      Expr.Call call = (Expr.Call) expr;
+      return new Expr.Call(call.callee, call.paren, call.arguments, block);
+    }
+    Token name = expr instanceof Expr.Get ? ((Expr.Get) expr).name : ((Expr.Variable) expr).name;
+    return new Expr.Call(expr, name, new ArrayList<>(), block);
+  }
+
+  private Expr.Block blockLiteral() {
+    boolean braces = match(LEFT_BRACE);
+    if (!braces)
+      consume(DO, "Expect 'do' or '{' to start a block.");
+    List<Token> params = new ArrayList<>();
+    if (match(PIPE)) {
+      do {
+        Token param = consume(IDENTIFIER, "Expect block parameter name.");
+        // as in ruby, a block parameter is always local
+        if (param.symbol().isGlobal)
+          throw error(param, "formal argument cannot be a global variable");
+        params.add(param);
+      } while (match(COMMA));
+      consume(PIPE, "Expect '|' after block parameters.");
+    }
+    List<Stmt> body;
+    if (braces) {
+      body = new ArrayList<>();
+      braceBlocks++;
+      try {
+        while (!check(RIGHT_BRACE) && !isAtEnd())
+          body.add(statement());
+      } finally {
+        braceBlocks--;
+      }
+      consume(RIGHT_BRACE, "Expect '}' after block.");
+    } else {
+      body = statementList();
+      consume(END, "Expect 'end' after block.");
+    }
+    return new Expr.Block(params, body);
+  }
+  // yield, yield(a, b) or yield a, b
+  private Expr yieldExpression() {
+    Token keyword = previous();
+    List<Expr> arguments = new ArrayList<>();
+    if (match(LEFT_PAREN)) {
+      if (!check(RIGHT_PAREN)) {
+        do {
+          arguments.add(expression());
+        } while (match(COMMA));
+      }
+      consume(RIGHT_PAREN, "Expect ')' after yield arguments.");
+    } else if (startsValue()) {
+      do {
+        arguments.add(expression());
+      } while (match(COMMA));
+    }
+    return new Expr.Yield(keyword, arguments);
+  }
+  // true when the next token can only begin a value, so yield takes it as an argument
+  private boolean startsValue() {
+    switch (peek().type) {
+      case IDENTIFIER:
+      case INTEGER:
+      case FLOAT:
+      case STRING:
+      case STRING_TEMPLATE:
+      case SYMBOL:
+      case INSTANCE_VARIABLE:
+      case LEFT_SQUARE:
+      case TRUE:
+      case FALSE:
+      case NIL:
+      case SELF:
+        return true;
+      default:
+        return false;
+    }
+  }
+  // method names may also be keywords, as in range.end
+  private Token methodName() {
+    Token name = peek();
+    if (name.type == IDENTIFIER || Character.isLetter(name.lexeme.isEmpty() ? ' ' : name.lexeme.charAt(0))) {
+      return advance();
+    }
+    throw error(name, "Expect method name after '.'.");
+  }
   /*
    * leaf node of recursive decent
    */
@@ -211,17 +358,43 @@ public class Parser {
       return new Expr.Literal(true);
     if (match(NIL))
       return new Expr.Literal(null);
-    if (match(INTEGER, FLOAT, STRING)) {
+    if (match(INTEGER, FLOAT, STRING, SYMBOL, REGEX)) {
       return new Expr.Literal(previous().literal);
     }
     if (match(IDENTIFIER)) {
-      return new Expr.Variable(previous());
+      Token name = previous();
+      // name :symbol, ... is a call without parentheses, as in memoize :fib
+      if (check(SYMBOL)) {
+        return commandCall(name);
+      }
+      return new Expr.Variable(name);
+    }
+    if (match(STRING_TEMPLATE)) {
+      return template(previous());
+    }
+    if (match(INSTANCE_VARIABLE)) {
+      return new Expr.Ivar(previous());
+    }
+    if (match(SELF)) {
+      return new Expr.Self(previous());
+    }
+    if (match(SUPER)) {
+      return superCall();
+    }
+    if (match(YIELD)) {
+      return yieldExpression();
     }
     if (match(LEFT_PAREN)) {
       Expr expr = expression();
       consume(RIGHT_PAREN, "Expect ')' after expression.");
       return new Expr.Grouping(expr);
     }
+    if (match(LEFT_SQUARE)) {
+      return arrayLiteral();
+    }
+    if (match(LEFT_BRACE)) {
+      return hashLiteral();
+    }
     // dealing with empty lines making an empty line as just a null statement
     if ((peek().type == NEWLINE)) {
       return new Expr.Literal(null);
@@ -230,12 +403,114 @@ public class Parser {
     throw error(peek(), "Expect expression.");
   }
 
+  // "text #{expr} text", each embedded expression is parsed once here
+  @SuppressWarnings("unchecked")
+  private Expr template(Token string) {
+    List<String> fragments = new ArrayList<>();
+    List<Expr> values = new ArrayList<>();
+    for (Object part : (List<Object>) string.literal) {
+      if (part instanceof String) {
+        fragments.add((String) part);
+        continue;
+      }
+      List<Token> code = (List<Token>) part;
+      Parser parser = new Parser(code);
+      // an empty #{} adds nothing
+      Expr value = parser.isAtEnd() ? new Expr.Literal(null) : parser.expression();
+      if (!parser.isAtEnd()) {
+        throw parser.error(parser.peek(), "Expect '}' after interpolated expression.");
+      }
+      values.add(value);
+    }
+    return new Expr.Template(fragments, values);
+  }
+
+  // super(arguments), a bare super passes on the parameters of the def it is in
+  private Expr superCall() {
+    Token keyword = previous();
+    if (functionName == null) {
+      throw error(keyword, "super called outside of method.");
+    }
+    List<Expr> arguments = new ArrayList<>();
+    if (match(LEFT_PAREN)) {
+      if (!check(RIGHT_PAREN)) {
+        do {
+          arguments.add(expression());
+        } while (match(COMMA));
+      }
+      consume(RIGHT_PAREN, "Expect ')' after arguments.");
+    } else {
+      for (Token param : functionParams) {
+        arguments.add(new Expr.Variable(param));
+      }
+    }
+    return new Expr.Super(keyword, functionName, arguments);
+  }
+
+  // the elements of [a, b, c], which may span several lines
+  private Expr arrayLiteral() {
+    List<Expr> elements = new ArrayList<>();
+    skipNewlines();
+    if (!check(RIGHT_SQUARE)) {
+      do {
+        skipNewlines();
+        elements.add(expression());
+        skipNewlines();
+      } while (match(COMMA));
+    }
+    consume(RIGHT_SQUARE, "Expect ']' after array elements.");
+    return new Expr.Array(elements);
+  }
+
+  // the pairs of { key => value, ... } or { name: value, ... }
+  private Expr hashLiteral() {
+    List<Expr> keys = new ArrayList<>();
+    List<Expr> values = new ArrayList<>();
+    skipNewlines();
+    if (!check(RIGHT_BRACE)) {
+      do {
+        skipNewlines();
+        // { name: value } is short for { :name => value }
+        if (check(IDENTIFIER) && superPeek().type == COLON) {
+          keys.add(new Expr.Literal(advance().symbol()));
+          advance();
+        } else {
+          keys.add(expression());
+          consume(FAT_ARROW_OP, "Expect '=>' after hash key.");
+        }
+        skipNewlines();
+        values.add(expression());
+        skipNewlines();
+      } while (match(COMMA));
+    }
+    consume(RIGHT_BRACE, "Expect '}' after hash elements.");
+    return new Expr.Hash(keys, values);
+  }
+
+  // name: value, ... up to the closing paren of a call
+  private Expr keywordArguments() {
+    List<Expr> keys = new ArrayList<>();
+    List<Expr> values = new ArrayList<>();
+    do {
+      Token name = consume(IDENTIFIER, "Expect keyword after keyword arguments.");
+      consume(COLON, "Expect ':' after keyword.");
+      keys.add(new Expr.Literal(name.symbol()));
+      values.add(expression());
+    } while (match(COMMA));
+    return new Expr.Hash(keys, values);
+  }
+
+  private void skipNewlines() {
+    while (match(NEWLINE)) {
+    }
+  }
   /*
    * to classify which type declaration it is or is it a statement
    */
   private Stmt declaration() {
     try {
       if (match(DEF)) return function("function");
+      if (match(CLASS)) return classDeclaration();
       if (peek().type == IDENTIFIER) {
         if (superPeek().type == COMMA) {// this condition is for checking if it is
                                         // declration or assignment
@@ -249,6 +524,49 @@ public class Parser {
     }
   }
 
+  /*
+   * class Name < Superclass, the body holds defs and attr_reader,
+   * attr_writer and attr_accessor lines
+   */
+  private Stmt classDeclaration() {
+    Token name = consume(IDENTIFIER, "Expect class name.");
+    if (!Character.isUpperCase(name.lexeme.charAt(0))) {
+      throw error(name, "class/module name must be CONSTANT");
+    }
+    Expr.Variable superclass = null;
+    if (match(LESS)) {
+      superclass = new Expr.Variable(consume(IDENTIFIER, "Expect superclass name."));
+    }
+    List<Stmt.Function> methods = new ArrayList<>();
+    List<Token> readers = new ArrayList<>();
+    List<Token> writers = new ArrayList<>();
+    skipNewlines();
+    while (!check(END) && !isAtEnd()) {
+      if (match(DEF)) {
+        methods.add(function("method"));
+      } else if (check(IDENTIFIER) && peek().lexeme.startsWith("attr_")) {
+        Token kind = advance();
+        boolean reader = kind.lexeme.equals("attr_reader") || kind.lexeme.equals("attr_accessor");
+        boolean writer = kind.lexeme.equals("attr_writer") || kind.lexeme.equals("attr_accessor");
+        if (!reader && !writer) {
+          throw error(kind, "Unknown attribute declaration '" + kind.lexeme + "'.");
+        }
+        do {
+          Token attribute = consume(SYMBOL, "Expect symbol after " + kind.lexeme + ".");
+          if (reader)
+            readers.add(attribute);
+          if (writer)
+            writers.add(attribute);
+        } while (match(COMMA));
+      } else {
+        throw error(peek(), "Expect method definition in class body.");
+      }
+      skipNewlines();
+    }
+    consume(END, "Expect 'end' after class body.");
+    return new Stmt.Class(name, superclass, methods, readers, writers);
+  }
+
   // this method id used for parallel assignment parses variables to one list and target to another list
   private Stmt varDeclaration() {
     List<Token> name = new ArrayList<>();
@@ -261,7 +579,7 @@ public class Parser {
     }
     List<Expr> initializer = new ArrayList<>();
     initializer = expressionList();
-    consume(NEWLINE, "Expect newline after value.");
+    endOfStatement();
     if (name.size() != initializer.size()) {
       throw new RuntimeError(null, "insufficient arguments");
     }
@@ -359,7 +677,7 @@ public class Parser {
   }
 // this method first parses the expression of case and then lists of conditions and branches
   private Stmt caseStatement() {
-    List<Expr> conditions = new ArrayList<>();
+    List<List<Expr>> conditions = new ArrayList<>();
     List<List<Stmt>> branches = new ArrayList<>();
 
     Expr condition = expression();
@@ -373,8 +691,12 @@ public class Parser {
     }
     current--;
     while (match(WHEN)) {
-      Expr Condition = expression();
-      conditions.add(Condition);
+      // when a, b matches either value
+      List<Expr> values = new ArrayList<>();
+      do {
+        values.add(expression());
+      } while (match(COMMA));
+      conditions.add(values);
       if (match(THEN)) {
       }
       advance();
@@ -395,18 +717,28 @@ public class Parser {
   //then creates a while statement
   //throws parsing error in case of syntax error
   private Stmt whileStatement() {
-    Expr condition = expression();
+    Expr condition = loopCondition();
+    match(DO);// optional syntax
     List<Stmt> body = statementList();
     consume(END, "expect end keyword");
     return new Stmt.While(condition, body);
   }
+  // the condition of while or until or the iterable of for, where a do belongs to the loop
+  private Expr loopCondition() {
+    loopConditions++;
+    try {
+      return expression();
+    } finally {
+      loopConditions--;
+    }
+  }
   //this method parses the until loop
   //first it parses the condition recursive decently
   //gets a list of statements of the body
   //then creates an until statement
   //throws parsing error in case of syntax error
   private Stmt untilStatement() {
-    Expr condition = expression();
+    Expr condition = loopCondition();
     consume(DO, "expect do keyword");
     List<Stmt> body = statementList();
     consume(END, "expect end keyword");
@@ -432,12 +764,17 @@ public class Parser {
     try {
       if (match(IDENTIFIER)) {
         Token variable = previous();
+        // for key, value in hash
+        Token value = null;
+        if (match(COMMA)) {
+          value = consume(IDENTIFIER, "Expect variable name after ','.");
+        }
         if (match(IN)) {
-          Expr iterable = expression();
-          // consume(DO, "Expect 'do' after for statement.");
+          Expr iterable = loopCondition();
+          match(DO);// optional syntax
           List<Stmt> body = statementList();
           consume(END, "Expect 'end' after for block.");
-          return new Stmt.For(variable, iterable, body);
+          return new Stmt.For(variable, value, iterable, body);
         }
       }
       return statement();
@@ -449,7 +786,7 @@ public class Parser {
 // make list of expressions to be printed and identified whishch statement id calling (print or puts)
   private Stmt printStatement(TokenType token) {
     List<Expr> value = expressionList();
-    consume(NEWLINE, "Expect newline after value.");
+    endOfStatement();
     boolean type = (token == PUTS) ? true : false;
     return new Stmt.Print(value, type);
   }
@@ -457,12 +794,26 @@ public class Parser {
     Token keyword = previous();
     Expr value = null;
       value = expression();
+    markTailCall(value);
     return new Stmt.Return(keyword, value);
   }
+  // a call whose value is returned straight away is in tail position
+  // and can reuse the frame of the function doing the return
+  private void markTailCall(Expr value) {
+    if (value instanceof Expr.Call) {
+      ((Expr.Call) value).tail = true;
+    }
+  }
+
+  private void endOfStatement() {
+    if (braceBlocks > 0 && check(RIGHT_BRACE))
+      return;
+    consume(NEWLINE, "Expect newline after value.");
+  }
 
   private Stmt expressionStatement() {
     Expr expr = expression();
-    consume(NEWLINE, "Expect newline after value.");
+    endOfStatement();
     return new Stmt.Expression(expr);
   }
 
@@ -474,6 +825,11 @@ public class Parser {
   private Stmt.Function function(String kind) {
     List<Token> parameters = new ArrayList<>();
     Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
+    // setter methods, def name=(value)
+    if (check(EQUAL) && superPeek().type == LEFT_PAREN) {
+      advance();
+      name = new Token(IDENTIFIER, name.lexeme + "=", Symbol.intern(name.lexeme + "="), name.line);
+    }
   
     // Check for optional left parenthesis '(' after the function name.
     if (match(LEFT_PAREN)) {
@@ -491,7 +847,24 @@ public class Parser {
     }
   
     // Parse the function body using the block function (not provided).
-    List<Stmt> body = block();
+    Token enclosingName = functionName;
+    List<Token> enclosingParams = functionParams;
+    functionName = name;
+    functionParams = parameters;
+    List<Stmt> body;
+    try {
+      body = block();
+    } finally {
+      functionName = enclosingName;
+      functionParams = enclosingParams;
+    }
+    // the value of the last expression is the value of the function
+    int last = body.size() - 1;
+    if (last >= 0 && body.get(last) instanceof Stmt.Expression) {
+      Expr value = ((Stmt.Expression) body.get(last)).expression;
+      markTailCall(value);
+      body.set(last, new Stmt.Return(name, value));
+    }
   
     return new Stmt.Function(name, parameters, body);
   }
@@ -541,6 +914,14 @@ public class Parser {
       if (expr instanceof Expr.Variable) {
         Token name = ((Expr.Variable) expr).name;
         expr = new Expr.Assign(name, operator, value);
+      } else if (expr instanceof Expr.Ivar) {
+        expr = new Expr.IvarSet(((Expr.Ivar) expr).name, operator, value);
+      } else if (expr instanceof Expr.Get) {
+        Expr.Get get = (Expr.Get) expr;
+        expr = new Expr.Set(get.object, get.name, operator, value);
+      } else if (expr instanceof Expr.Index) {
+        Expr.Index index = (Expr.Index) expr;
+        expr = new Expr.IndexSet(index.object, index.bracket, index.index, operator, value);
       }
 
       // error(operator, "Invalid assignment target.");
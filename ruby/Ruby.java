@@ -14,6 +14,14 @@ public class Ruby {
     private static final Interpreter interpreter = new Interpreter();
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
+    // stack reserved for the interpreter thread, see runOnInterpreterThread
+    private static long stackSize = 512L << 20;
+    private static boolean memoStats = false;
+    // -n and -p, run the script once per line of stdin
+    private static boolean loopLines = false;
+    private static boolean printLines = false;
+    // the -e script, null when there was none
+    private static StringBuilder inline = null;
 
     /*
      * The entry point of the program 
@@ -21,15 +29,163 @@ public class Ruby {
      * and acts accordingly
      */
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: JRuby [script]");
-            // A non-zero status code typically indicates an error condition.
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
-        } else {
-            runPrompt();
+        // options come before the script path
+        int index = 0;
+        while (index < args.length && args[index].startsWith("-") && args[index].length() > 1) {
+            if (args[index].startsWith("--")) {
+                if (!option(args[index])) {
+                    usage();
+                }
+            } else {
+                index = flags(args, index);
+            }
+            index++;
+        }
+        if (args.length - index > (inline == null ? 1 : 0)) {
+            usage();
+        }
+        String path = index < args.length ? args[index] : null;
+        runOnInterpreterThread(() -> {
+            if (inline != null) {
+                runScript(inline.toString());
+            } else if (path != null) {
+                runFile(path);
+            } else if (loopLines) {
+                // -n without a script has nothing to run on the lines
+                usage();
+            } else {
+                runPrompt();
+            }
+        });
+    }
+    /*
+     * Short flags like ruby's, -e script, -n and -p, also together as in -ne
+     * returns the index of the last argument used
+     */
+    private static int flags(String[] args, int index) {
+        String flags = args[index];
+        for (int i = 1; i < flags.length(); i++) {
+            switch (flags.charAt(i)) {
+                case 'n':
+                    loopLines = true;
+                    break;
+                case 'p':
+                    loopLines = true;
+                    printLines = true;
+                    break;
+                case 'e':
+                    // the script is the next argument, several -e are several lines
+                    if (i != flags.length() - 1 || index + 1 >= args.length)
+                        usage();
+                    if (inline == null)
+                        inline = new StringBuilder();
+                    inline.append(args[++index]).append('\n');
+                    break;
+                default:
+                    usage();
+            }
         }
+        return index;
+    }
+    /*
+     * Handles a single --name=value option
+     * returns false if the option is not known
+     */
+    private static boolean option(String arg) {
+        if (arg.equals("--no-tail-calls")) {
+            // keeps one frame per call, handy when debugging
+            interpreter.tailCalls = false;
+            return true;
+        }
+        if (arg.equals("--memo-stats")) {
+            // hit and miss counts of the memoized functions, printed when the script ends
+            memoStats = true;
+            return true;
+        }
+        int equals = arg.indexOf('=');
+        if (equals < 0)
+            return false;
+        String name = arg.substring(2, equals);
+        String value = arg.substring(equals + 1);
+        try {
+            switch (name) {
+                case "stack":
+                    stackSize = parseSize(value);
+                    return stackSize > 0;
+                case "max-depth":
+                    interpreter.maxDepth = Integer.parseInt(value);
+                    return interpreter.maxDepth > 0;
+                case "memo-size":
+                    interpreter.memoSize = Integer.parseInt(value);
+                    return interpreter.memoSize > 0;
+                case "flush":
+                    // line, full or auto, when buffered output is written to stdout
+                    interpreter.out.policy(OutputSink.Flush.valueOf(value.toUpperCase()));
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (IllegalArgumentException e) {
+            // a bad number or an unknown flush policy
+            return false;
+        }
+    }
+    // sizes like 512m or 2g or plain bytes
+    private static long parseSize(String value) {
+        long unit = 1;
+        char last = Character.toLowerCase(value.charAt(value.length() - 1));
+        if (last == 'k' || last == 'm' || last == 'g') {
+            unit = last == 'k' ? 1L << 10 : last == 'm' ? 1L << 20 : 1L << 30;
+            value = value.substring(0, value.length() - 1);
+        }
+        return Long.parseLong(value) * unit;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: JRuby [--stack=SIZE] [--max-depth=N] [--no-tail-calls] [--memo-size=N] [--memo-stats] [--flush=line|full|auto] [-n] [-p] [-e code | script]");
+        // A non-zero status code typically indicates an error condition.
+        System.exit(64);
+    }
+
+    interface Task {
+        void run() throws IOException;
+    }
+    /*
+     * Every Ruby call nests a handful of visitor frames on the Java stack,
+     * so the default thread stack runs out long before real Ruby would.
+     * The script is run on its own thread whose stack is reserved from the
+     * --stack budget, the interpreter counts Ruby frames against --max-depth
+     * and whichever limit is hit first is reported as a SystemStackError.
+     */
+    private static void runOnInterpreterThread(Task task) throws IOException {
+        // whatever escapes the script, rethrown on the main thread so it still ends the process with status 1
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                try {
+                    task.run();
+                } finally {
+                    interpreter.closeFiles();
+                    interpreter.out.flush();
+                }
+            } catch (OutputSink.Closed e) {
+                // nothing reads stdout any more, the script just ends
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "ruby-main", stackSize);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure[0] instanceof IOException)
+            throw (IOException) failure[0];
+        if (failure[0] instanceof RuntimeException)
+            throw (RuntimeException) failure[0];
+        if (failure[0] != null)
+            throw (Error) failure[0];
     }
     /*
      * Wrapper method to interpret code from a file
@@ -41,7 +197,15 @@ public class Ruby {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
 
         // Charset.defaultCharset() - default character encoding
-        run(new String(bytes, Charset.defaultCharset()) + "\n");
+        runScript(new String(bytes, Charset.defaultCharset()) + "\n");
+    }
+    // runs a whole script, from a file or -e, and exits with its status
+    private static void runScript(String source) {
+        run(source);
+        interpreter.closeFiles();
+        interpreter.out.flush();
+        if (memoStats)
+            interpreter.printMemoStats();
         if (hadError)
             System.exit(65);
         if (hadRuntimeError)
@@ -67,6 +231,7 @@ public class Ruby {
          */
         BufferedReader reader = new BufferedReader(input);
         while (true) {
+            interpreter.out.flush();
             System.out.print("$");
             String line = reader.readLine();
             if (line == null)
@@ -97,7 +262,10 @@ public class Ruby {
         // Stop if there was a syntax error.
         if (hadError)
             return;
-        interpreter.interpret(statements);
+        if (loopLines)
+            interpreter.interpretLines(statements, printLines);
+        else
+            interpreter.interpret(statements);
         // System.out.println(new AstPrinter().print(expression));
     }
 
@@ -112,6 +280,7 @@ public class Ruby {
      * And prevents the program from interpreting further
      */
     private static void report(int line, String where, String message) {
+        interpreter.out.flush();
         System.err.println("[line " + line + "] Error" + where + ": " + message);
         hadError = true;
     }
@@ -129,6 +298,7 @@ public class Ruby {
      * Method for runtime error
      */
     static void runtimeError(RuntimeError error) {
+        interpreter.out.flush();
         System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
         hadRuntimeError = true;
     }
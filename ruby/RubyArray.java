@@ -0,0 +1,300 @@
+package ruby;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * A ruby Array
+ * The elements are kept in the cheapest storage that can hold all of them:
+ * a long[] while every element is an Integer, a double[] while every element
+ * is a Float and an Object[] once anything else is stored. An array only
+ * ever moves towards Object[], so numeric arrays stay unboxed until a value
+ * of another type actually shows up.
+ */
+class RubyArray implements Iterable<Object> {
+    private static final int LONGS = 0;
+    private static final int DOUBLES = 1;
+    private static final int OBJECTS = 2;
+    private static final long[] NO_LONGS = new long[0];
+
+    private int kind = LONGS;
+    private long[] longs = NO_LONGS;
+    private double[] doubles;
+    private Object[] objects;
+    private int size;
+
+    RubyArray() {
+    }
+
+    RubyArray(int capacity) {
+        longs = new long[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+    // element at index, negative indexes count from the end, nil when out of range
+    Object get(long index) {
+        if (index < 0)
+            index += size;
+        if (index < 0 || index >= size)
+            return null;
+        return at((int) index);
+    }
+    // element at a checked index, boxing a primitive element
+    Object at(int index) {
+        switch (kind) {
+            case LONGS:
+                return Arithmetic.box(longs[index]);
+            case DOUBLES:
+                return doubles[index];
+            default:
+                return objects[index];
+        }
+    }
+    // true when the elements are all integers held unboxed
+    boolean isLongs() {
+        return kind == LONGS;
+    }
+
+    long longAt(int index) {
+        return longs[index];
+    }
+
+    void set(Token token, long index, Object value) {
+        if (index < 0)
+            index += size;
+        if (index < 0) {
+            throw new RuntimeError(token, "index " + (index - size) + " too small for array");
+        }
+        if (index >= Integer.MAX_VALUE - 8) {
+            throw new RuntimeError(token, "index " + index + " too big");
+        }
+        int slot = (int) index;
+        if (slot >= size) {
+            // the gap is filled with nil, which only an Object[] can hold
+            if (slot > size)
+                generalize();
+            reserve(slot + 1);
+            size = slot + 1;
+        }
+        store(slot, value);
+    }
+
+    RubyArray push(Object value) {
+        reserve(size + 1);
+        size++;
+        store(size - 1, value);
+        return this;
+    }
+
+    Object pop() {
+        if (size == 0)
+            return null;
+        Object last = at(size - 1);
+        size--;
+        if (kind == OBJECTS)
+            objects[size] = null;
+        return last;
+    }
+    /*
+     * writes a value, switching the storage first when it does not fit
+     * the first element of an empty array picks the storage
+     */
+    private void store(int index, Object value) {
+        if (kind == LONGS && value instanceof Long) {
+            longs[index] = (Long) value;
+            return;
+        }
+        if (kind == DOUBLES && value instanceof Double) {
+            doubles[index] = (Double) value;
+            return;
+        }
+        if (kind == LONGS && size == 1 && value instanceof Double) {
+            kind = DOUBLES;
+            doubles = new double[longs.length];
+            longs = NO_LONGS;
+            doubles[index] = (Double) value;
+            return;
+        }
+        generalize();
+        objects[index] = value;
+    }
+    // moves the elements into an Object[] for good
+    private void generalize() {
+        if (kind == OBJECTS)
+            return;
+        Object[] boxed = new Object[Math.max(capacity(), 4)];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = at(i);
+        }
+        objects = boxed;
+        longs = NO_LONGS;
+        doubles = null;
+        kind = OBJECTS;
+    }
+
+    private int capacity() {
+        switch (kind) {
+            case LONGS:
+                return longs.length;
+            case DOUBLES:
+                return doubles.length;
+            default:
+                return objects.length;
+        }
+    }
+
+    private void reserve(int needed) {
+        int capacity = capacity();
+        if (needed <= capacity)
+            return;
+        int grown = Math.max(needed, Math.max(capacity + (capacity >> 1), 4));
+        switch (kind) {
+            case LONGS:
+                longs = Arrays.copyOf(longs, grown);
+                break;
+            case DOUBLES:
+                doubles = Arrays.copyOf(doubles, grown);
+                break;
+            default:
+                objects = Arrays.copyOf(objects, grown);
+        }
+    }
+
+    boolean includes(Object value) {
+        if (kind == LONGS) {
+            if (!(value instanceof Long))
+                return false;
+            long x = (Long) value;
+            for (int i = 0; i < size; i++) {
+                if (longs[i] == x)
+                    return true;
+            }
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (Builtins.valueEquals(at(i), value))
+                return true;
+        }
+        return false;
+    }
+    // sum of a numeric array, integer arrays add up unboxed while they fit a long
+    Object sum(Token token) {
+        Object total = Arithmetic.box(0);
+        int i = 0;
+        if (kind == LONGS) {
+            long partial = 0;
+            for (; i < size; i++) {
+                long next = partial + longs[i];
+                // stop at the first overflow and carry on with the general path
+                if (((partial ^ next) & (longs[i] ^ next)) < 0)
+                    break;
+                partial = next;
+            }
+            total = Arithmetic.box(partial);
+        }
+        for (; i < size; i++) {
+            total = Builtins.add(token, total, at(i));
+        }
+        return total;
+    }
+
+    RubyArray copy() {
+        RubyArray copy = new RubyArray();
+        copy.kind = kind;
+        copy.size = size;
+        copy.longs = kind == LONGS ? Arrays.copyOf(longs, size) : NO_LONGS;
+        copy.doubles = kind == DOUBLES ? Arrays.copyOf(doubles, size) : null;
+        copy.objects = kind == OBJECTS ? Arrays.copyOf(objects, Math.max(size, 4)) : null;
+        return copy;
+    }
+
+    RubyArray reverse() {
+        RubyArray reversed = new RubyArray(size);
+        for (int i = size - 1; i >= 0; i--) {
+            reversed.push(at(i));
+        }
+        return reversed;
+    }
+
+    RubyArray concat(RubyArray other) {
+        RubyArray joined = copy();
+        for (int i = 0; i < other.size; i++) {
+            joined.push(other.at(i));
+        }
+        return joined;
+    }
+
+    RubyString join(String separator) {
+        RubyString joined = new RubyString("");
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                joined.append(separator);
+            Object element = at(i);
+            joined.append(element instanceof RubyArray ? ((RubyArray) element).join(separator)
+                    : Builtins.stringify(element));
+        }
+        return joined;
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return new Iterator<Object>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Object next() {
+                if (index >= size)
+                    throw new NoSuchElementException();
+                return at(index++);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (!(other instanceof RubyArray))
+            return false;
+        RubyArray array = (RubyArray) other;
+        if (size != array.size)
+            return false;
+        if (kind == LONGS && array.kind == LONGS) {
+            return Arrays.equals(longs, 0, size, array.longs, 0, size);
+        }
+        for (int i = 0; i < size; i++) {
+            if (!Builtins.valueEquals(at(i), array.at(i)))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = size;
+        for (int i = 0; i < size; i++) {
+            Object element = at(i);
+            hash = hash * 31 + (element == null ? 0 : element.hashCode());
+        }
+        return hash;
+    }
+    // inspect form, [1, "two", nil]
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append(Builtins.inspect(at(i)));
+        }
+        return builder.append(']').toString();
+    }
+}
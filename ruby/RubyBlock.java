@@ -0,0 +1,30 @@
+package ruby;
+
+/*
+ * A block passed to a method that yields to it
+ * It keeps what the code around the block had, the scope, self, the class
+ * of the running method and that method's own block, so yield runs the
+ * body as if it were still where it was written.
+ * Blocks given to the builtin iterators never become one of these, the
+ * interpreter runs them inline as loops.
+ */
+final class RubyBlock {
+    final Expr.Block code;
+    final Environment closure;
+    final RubyInstance self;
+    final RubyClass owner;
+    final RubyBlock outer;
+
+    RubyBlock(Expr.Block code, Environment closure, RubyInstance self, RubyClass owner, RubyBlock outer) {
+        this.code = code;
+        this.closure = closure;
+        this.self = self;
+        this.owner = owner;
+        this.outer = outer;
+    }
+
+    @Override
+    public String toString() {
+        return "#<Proc>";
+    }
+}
@@ -1,5 +1,7 @@
 package ruby;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 interface RubyCallable {
@@ -12,4 +14,25 @@ interface RubyCallable {
      *The return type is Object, indicating that the result of the function call can be of any type.
     */
     Object call(Interpreter interpreter, List<Object> arguments);
+    /*
+     * Fixed arity entry points
+     * Call sites with up to three arguments pass them as plain parameters,
+     * so no argument list is allocated. Callables that can take them
+     * directly override these, the defaults pack them up for call.
+     */
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, Collections.emptyList());
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, Collections.singletonList(a));
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, Arrays.asList(a, b));
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, Arrays.asList(a, b, c));
+    }
 }
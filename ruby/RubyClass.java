@@ -0,0 +1,77 @@
+package ruby;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * A ruby class, its methods and its superclass
+ * Call sites cache the method they found for a class together with the
+ * class's version. Defining a method bumps the version of the class and of
+ * every class below it, so a stale cache entry is noticed with one int
+ * compare instead of a walk up the superclass chain.
+ */
+class RubyClass {
+    static final RubyClass OBJECT = new RubyClass("Object", null);
+    private static final Symbol INITIALIZE = Symbol.intern("initialize");
+
+    final String name;
+    final RubyClass superclass;
+    private final Map<Symbol, RubyCallable> methods = new HashMap<>();
+    private final List<RubyClass> subclasses = new ArrayList<>();
+    int version;
+    // initialize as of initializerVersion, looked up again after a change
+    private RubyCallable initializer;
+    private int initializerVersion = -1;
+
+    RubyClass(String name, RubyClass superclass) {
+        this.name = name;
+        this.superclass = superclass;
+        if (superclass != null) {
+            superclass.subclasses.add(this);
+        }
+    }
+
+    void define(Symbol name, RubyCallable method) {
+        methods.put(name, method);
+        invalidate();
+    }
+
+    private void invalidate() {
+        version++;
+        for (RubyClass subclass : subclasses) {
+            subclass.invalidate();
+        }
+    }
+    // the method for name here or in a superclass, null when there is none
+    RubyCallable findMethod(Symbol name) {
+        for (RubyClass klass = this; klass != null; klass = klass.superclass) {
+            RubyCallable method = klass.methods.get(name);
+            if (method != null)
+                return method;
+        }
+        return null;
+    }
+
+    RubyCallable initializer() {
+        if (initializerVersion != version) {
+            initializer = findMethod(INITIALIZE);
+            initializerVersion = version;
+        }
+        return initializer;
+    }
+
+    boolean isSubclassOf(RubyClass other) {
+        for (RubyClass klass = this; klass != null; klass = klass.superclass) {
+            if (klass == other)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -9,10 +9,23 @@ class RubyFunction implements RubyCallable {
 
     private final Environment closure;
     private final Stmt.Function declaration;
+    // the class a method is defined in, null for a plain function
+    final RubyClass owner;
+    // the parameter names, interned once
+    private final Symbol[] params;
 
     RubyFunction(Stmt.Function declaration, Environment closure) {
+        this(declaration, closure, null);
+    }
+
+    RubyFunction(Stmt.Function declaration, Environment closure, RubyClass owner) {
         this.closure = closure;
         this.declaration = declaration;
+        this.owner = owner;
+        this.params = new Symbol[declaration.params.size()];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = declaration.params.get(i).symbol();
+        }
     }
     @Override
     public String toString() {
@@ -21,7 +34,7 @@ class RubyFunction implements RubyCallable {
 
     @Override
     public int arity() {
-        return declaration.params.size();
+        return params.length;
     }
     @Override
 /*
@@ -30,20 +43,84 @@ class RubyFunction implements RubyCallable {
  * the function's body within this new environment using the interpreter's executeBlock method.
  */
     public Object call(Interpreter interpreter,List<Object> arguments) {
+        return run(interpreter, bind(arguments, null));
+    }
+    // the fixed arity forms define the arguments straight in the new frame
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return run(interpreter, new Environment(closure));
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
         Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme,
-            arguments.get(i));
-        }
-        //We wrap the call to executeBlock() in a try-catch block
+        environment.define(params[0], a);
+        return run(interpreter, environment);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        Environment environment = new Environment(closure);
+        environment.define(params[0], a);
+        environment.define(params[1], b);
+        return run(interpreter, environment);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        Environment environment = new Environment(closure);
+        environment.define(params[0], a);
+        environment.define(params[1], b);
+        environment.define(params[2], c);
+        return run(interpreter, environment);
+    }
+    /*
+     * Runs the body in a frame that already holds the arguments.
+     * Calls in tail position come back as a TailCall and are run by the same loop,
+     * reusing the environment when the callee is this function again.
+     */
+    private Object run(Interpreter interpreter, Environment environment) {
+        RubyFunction function = this;
+        RubyClass caller = interpreter.owner;
+        RubyBlock callerBlock = interpreter.block;
+        // the block the call site handed over, if any, belongs to this frame
+        interpreter.block = interpreter.blockArgument;
+        interpreter.blockArgument = null;
+        interpreter.enterFrame(declaration.name);
         try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            return returnValue.value;
+            while (true) {
+                interpreter.owner = function.owner;
+                //We wrap the call to executeBlock() in a try-catch block
+                try {
+                    interpreter.executeBlock(function.declaration.body, environment);
+                    return null;
+                } catch (Return returnValue) {
+                    return returnValue.value;
+                } catch (TailCall tailCall) {
+                    environment = tailCall.function.bind(tailCall.arguments,
+                            tailCall.function == function ? environment : null);
+                    function = tailCall.function;
+                    interpreter.block = null;
+                }
+            }
+        } finally {
+            interpreter.owner = caller;
+            interpreter.block = callerBlock;
+            interpreter.exitFrame();
+        }
+    }
+    // binds the arguments into the previous frame when nothing closed over it
+    private Environment bind(List<Object> arguments, Environment previous) {
+        Environment environment = previous;
+        if (environment == null || environment.captured) {
+            environment = new Environment(closure);
+        } else {
+            environment.clear();
+        }
+        for (int i = 0; i < params.length; i++) {
+            environment.define(params[i], arguments.get(i));
         }
-        //interpreter.executeBlock(declaration.body, environment);
-        return null;
+        return environment;
     }
-    
 
 }
\ No newline at end of file
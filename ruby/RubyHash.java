@@ -0,0 +1,270 @@
+package ruby;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/*
+ * A ruby Hash
+ * Entries are appended to parallel key, value and hash arrays, which is what
+ * keeps the insertion order. A separate open addressing table of ints maps a
+ * hash to the entry index, so an entry costs a few array slots instead of a
+ * node object as in java.util.LinkedHashMap.
+ * While every key is a small non negative Integer there is no hashing at all,
+ * the key itself indexes a dense table. The first other key switches the hash
+ * to the open addressing table.
+ * Deleted entries are only marked, they are dropped when the entry arrays
+ * have to grow.
+ */
+class RubyHash {
+    private static final Object DELETED = new Object();
+    private static final int MIN_DENSE = 64;
+
+    private Object[] keys = new Object[8];
+    private Object[] values = new Object[8];
+    private int[] hashes = new int[8];
+    // entries written so far, live or deleted
+    private int used;
+    private int size;
+    // hashed mode, slot -> entry index + 1, 0 for an empty slot
+    private int[] index;
+    // slots in use, deleted entries keep theirs until the next rebuild
+    private int occupied;
+    // dense mode, key -> entry index + 1, null once a key does not fit
+    private int[] dense = new int[16];
+
+    int size() {
+        return size;
+    }
+    // value for key, nil when it is missing
+    Object get(Object key) {
+        int entry = find(key);
+        return entry < 0 ? null : values[entry];
+    }
+
+    boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    void put(Object key, Object value) {
+        int entry = find(key);
+        if (entry >= 0) {
+            values[entry] = value;
+            return;
+        }
+        // string keys are copied so changing the original can't move the entry
+        if (key instanceof RubyString) {
+            key = new RubyString(key.toString());
+        }
+        if (dense != null && !fitsDense(key)) {
+            dense = null;
+            rebuildIndex(tableSize(size + 1));
+        }
+        if (used == keys.length) {
+            growEntries();
+        }
+        int hash = hash(key);
+        keys[used] = key;
+        values[used] = value;
+        hashes[used] = hash;
+        if (dense != null) {
+            int slot = (int) (long) (Long) key;
+            if (slot >= dense.length) {
+                dense = Arrays.copyOf(dense, Math.max(slot + 1, dense.length * 2));
+            }
+            dense[slot] = used + 1;
+        } else {
+            if ((occupied + 1) * 2 > index.length) {
+                rebuildIndex(tableSize(size + 1));
+            }
+            insert(hash, used);
+        }
+        used++;
+        size++;
+    }
+    // removes the entry and returns its value, nil when it is missing
+    Object delete(Object key) {
+        int entry = find(key);
+        if (entry < 0)
+            return null;
+        Object value = values[entry];
+        if (dense != null) {
+            dense[(int) (long) (Long) keys[entry]] = 0;
+        }
+        keys[entry] = DELETED;
+        values[entry] = null;
+        size--;
+        return value;
+    }
+
+    private int find(Object key) {
+        if (dense != null) {
+            if (key instanceof Long) {
+                long slot = (Long) key;
+                if (slot >= 0 && slot < dense.length)
+                    return dense[(int) slot] - 1;
+            }
+            return -1;
+        }
+        int hash = hash(key);
+        int mask = index.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int entry = index[slot] - 1;
+            if (entry < 0)
+                return -1;
+            if (hashes[entry] == hash && keys[entry] != DELETED && Objects.equals(keys[entry], key))
+                return entry;
+        }
+    }
+
+    private boolean fitsDense(Object key) {
+        if (!(key instanceof Long))
+            return false;
+        long slot = (Long) key;
+        return slot >= 0 && slot < Math.max(MIN_DENSE, 4L * (size + 1));
+    }
+    // RubyString caches its hash so string keys are only hashed once
+    private static int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private void insert(int hash, int entry) {
+        int mask = index.length - 1;
+        int slot = hash & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = entry + 1;
+        occupied++;
+    }
+    // smallest power of two table keeping the load at most one half
+    private static int tableSize(int entries) {
+        int size = 16;
+        while (size < entries * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private void rebuildIndex(int tableSize) {
+        index = new int[tableSize];
+        occupied = 0;
+        for (int entry = 0; entry < used; entry++) {
+            if (keys[entry] != DELETED)
+                insert(hashes[entry], entry);
+        }
+    }
+    // drops deleted entries, or doubles the arrays when there are few of them
+    private void growEntries() {
+        if (size <= used / 2) {
+            int live = 0;
+            for (int entry = 0; entry < used; entry++) {
+                if (keys[entry] == DELETED)
+                    continue;
+                keys[live] = keys[entry];
+                values[live] = values[entry];
+                hashes[live] = hashes[entry];
+                live++;
+            }
+            Arrays.fill(keys, live, used, null);
+            Arrays.fill(values, live, used, null);
+            used = live;
+            if (dense != null) {
+                Arrays.fill(dense, 0);
+                for (int entry = 0; entry < used; entry++)
+                    dense[(int) (long) (Long) keys[entry]] = entry + 1;
+            } else {
+                rebuildIndex(index.length);
+            }
+            return;
+        }
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+    }
+    /*
+     * Entries are walked by position, skipping deleted ones
+     * for (int e = hash.next(-1); e >= 0; e = hash.next(e))
+     */
+    int next(int entry) {
+        for (entry++; entry < used; entry++) {
+            if (keys[entry] != DELETED)
+                return entry;
+        }
+        return -1;
+    }
+
+    Object keyAt(int entry) {
+        return keys[entry];
+    }
+
+    Object valueAt(int entry) {
+        return values[entry];
+    }
+
+    RubyArray keys() {
+        RubyArray array = new RubyArray(size);
+        for (int entry = next(-1); entry >= 0; entry = next(entry))
+            array.push(keys[entry]);
+        return array;
+    }
+
+    RubyArray values() {
+        RubyArray array = new RubyArray(size);
+        for (int entry = next(-1); entry >= 0; entry = next(entry))
+            array.push(values[entry]);
+        return array;
+    }
+    // [[key, value], ...]
+    RubyArray toArray() {
+        RubyArray array = new RubyArray(size);
+        for (int entry = next(-1); entry >= 0; entry = next(entry))
+            array.push(pair(entry));
+        return array;
+    }
+
+    RubyArray pair(int entry) {
+        RubyArray pair = new RubyArray(2);
+        pair.push(keys[entry]);
+        pair.push(values[entry]);
+        return pair;
+    }
+    // two hashes are equal when they have the same entries, in any order
+    @Override
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (!(other instanceof RubyHash))
+            return false;
+        RubyHash hash = (RubyHash) other;
+        if (size != hash.size)
+            return false;
+        for (int entry = next(-1); entry >= 0; entry = next(entry)) {
+            int found = hash.find(keys[entry]);
+            if (found < 0 || !Builtins.valueEquals(values[entry], hash.values[found]))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int sum = size;
+        for (int entry = next(-1); entry >= 0; entry = next(entry)) {
+            sum += hashes[entry] ^ Objects.hashCode(values[entry]);
+        }
+        return sum;
+    }
+    // inspect form, {1=>"one", "two"=>2}
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int entry = next(-1); entry >= 0; entry = next(entry)) {
+            if (builder.length() > 1)
+                builder.append(", ");
+            builder.append(Builtins.inspect(keys[entry])).append("=>").append(Builtins.inspect(values[entry]));
+        }
+        return builder.append('}').toString();
+    }
+}
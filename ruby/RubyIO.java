@@ -0,0 +1,172 @@
+package ruby;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * An open ruby File, or STDIN
+ * Reading goes through a LineReader over the mapped file (a large buffer
+ * for stdin), writing through an OutputSink of its own that only writes
+ * when its buffer is full or the file is flushed or closed.
+ */
+final class RubyIO {
+    final String path;
+    // null when not open for reading or writing
+    private final LineReader reader;
+    private final OutputSink writer;
+    private final Channel channel;
+    private boolean closed;
+    // false for STDIN, an IO that is no File
+    final boolean isFile;
+    // lines read by gets so far
+    long lineno;
+
+    private RubyIO(String path, LineReader reader, OutputSink writer, Channel channel) {
+        this(path, reader, writer, channel, true);
+    }
+
+    private RubyIO(String path, LineReader reader, OutputSink writer, Channel channel, boolean isFile) {
+        this.isFile = isFile;
+        this.path = path;
+        this.reader = reader;
+        this.writer = writer;
+        this.channel = channel;
+    }
+    /*
+     * File.open(path, mode), mode is "r", "w" or "a"
+     * The errors read like ruby's, Errno::ENOENT and friends.
+     */
+    static RubyIO open(String path, String mode) {
+        try {
+            Path file = Paths.get(path);
+            switch (mode) {
+                case "r": {
+                    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                    return new RubyIO(path, LineReader.mapped(channel), null, channel);
+                }
+                case "w":
+                    return writer(path, file, StandardOpenOption.TRUNCATE_EXISTING);
+                case "a":
+                    return writer(path, file, StandardOpenOption.APPEND);
+                default:
+                    throw new RuntimeError("invalid access mode " + mode);
+            }
+        } catch (IOException e) {
+            throw error(e, path);
+        }
+    }
+    // STDIN, read as a stream whatever it is connected to
+    static RubyIO stdin() {
+        FileChannel channel = new FileInputStream(FileDescriptor.in).getChannel();
+        return new RubyIO("<STDIN>", LineReader.stream(channel), null, channel, false);
+    }
+
+    // STDOUT, writing through the sink print and puts use
+    static RubyIO stdout(OutputSink out) {
+        return new RubyIO("<STDOUT>", null, out, null, false);
+    }
+
+    private static RubyIO writer(String path, Path file, OpenOption how) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, how);
+        return new RubyIO(path, null, new OutputSink(channel, OutputSink.Flush.FULL), channel);
+    }
+
+    static RuntimeError error(IOException e, String path) {
+        if (e instanceof NoSuchFileException)
+            return new RuntimeError("No such file or directory @ rb_sysopen - " + path + " (Errno::ENOENT)");
+        if (e instanceof AccessDeniedException)
+            return new RuntimeError("Permission denied @ rb_sysopen - " + path + " (Errno::EACCES)");
+        if (e instanceof FileAlreadyExistsException)
+            return new RuntimeError("File exists @ rb_sysopen - " + path + " (Errno::EEXIST)");
+        return new RuntimeError(e.getMessage() + " - " + path + " (IOError)");
+    }
+    // the next line, nil at the end of the file
+    RubyString gets() {
+        RubyString line;
+        try {
+            line = readable().readLine();
+        } catch (IOException e) {
+            throw error(e, path);
+        }
+        if (line != null)
+            lineno++;
+        return line;
+    }
+
+    RubyString read() {
+        try {
+            return readable().readAll();
+        } catch (IOException e) {
+            throw error(e, path);
+        }
+    }
+
+    boolean atEnd() {
+        try {
+            return readable().atEnd();
+        } catch (IOException e) {
+            throw error(e, path);
+        }
+    }
+
+    OutputSink writer() {
+        checkOpen();
+        if (writer == null)
+            throw new RuntimeError("not opened for writing (IOError)");
+        return writer;
+    }
+
+    // the reader under gets, CSV reads its rows from there
+    LineReader lines() {
+        return readable();
+    }
+
+    private LineReader readable() {
+        checkOpen();
+        if (reader == null)
+            throw new RuntimeError("not opened for reading (IOError)");
+        return reader;
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new RuntimeError("closed stream (IOError)");
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+    // flushes what was written and lets go of the file, closing twice does nothing
+    void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (writer != null)
+                writer.flush();
+        } finally {
+            try {
+                // STDOUT leaves the sink of the interpreter open
+                if (channel != null)
+                    channel.close();
+            } catch (IOException e) {
+                throw error(e, path);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (isFile ? "#<File:" : "#<IO:") + path + (closed ? " (closed)>" : ">");
+    }
+}
@@ -0,0 +1,54 @@
+package ruby;
+
+import java.util.Arrays;
+
+/*
+ * An object made by Class.new
+ * The instance variables are kept in slots, their names are in the Shape.
+ */
+class RubyInstance {
+    private static final Object[] NO_SLOTS = new Object[0];
+
+    final RubyClass klass;
+    Shape shape = Shape.EMPTY;
+    Object[] slots = NO_SLOTS;
+
+    RubyInstance(RubyClass klass) {
+        this.klass = klass;
+    }
+    // @name by a lookup in the shape, for code that has no cache of its own
+    Object get(Symbol name) {
+        int slot = shape.slotOf(name);
+        return slot < 0 ? null : slots[slot];
+    }
+
+    void set(Symbol name, Object value) {
+        int slot = shape.slotOf(name);
+        if (slot < 0) {
+            slot = shape.size();
+            reshape(shape.with(name));
+        }
+        slots[slot] = value;
+    }
+    // moves to a shape with more variables, growing the slots to match
+    void reshape(Shape next) {
+        if (next.size() > slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(next.size(), slots.length * 2));
+        }
+        shape = next;
+    }
+    // inspect form, #<Point @x=1, @y=2>
+    String inspect() {
+        StringBuilder builder = new StringBuilder("#<").append(klass.name);
+        for (int slot = 0; slot < shape.size(); slot++) {
+            builder.append(slot == 0 ? " " : ", ").append(shape.nameAt(slot)).append('=')
+                    .append(Builtins.inspect(slots[slot]));
+        }
+        return builder.append('>').toString();
+    }
+
+    @Override
+    public String toString() {
+        return "#<" + klass.name + ">";
+    }
+}
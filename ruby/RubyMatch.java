@@ -0,0 +1,82 @@
+package ruby;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/*
+ * MatchData, the result of String#match and Regexp#match
+ * The group texts are copied out of the string when the match is made,
+ * the rest of the string is only read again for pre_match and post_match.
+ */
+class RubyMatch {
+    private final String[] groups;
+    private final int[] starts;
+    private final Map<String, String> named;
+    private final CharSequence input;
+    private final int start;
+    private final int end;
+
+    RubyMatch(Matcher matcher, CharSequence input, List<String> names) {
+        int count = matcher.groupCount() + 1;
+        this.groups = new String[count];
+        this.starts = new int[count];
+        for (int group = 0; group < count; group++) {
+            groups[group] = matcher.group(group);
+            starts[group] = matcher.start(group);
+        }
+        this.named = new HashMap<>();
+        for (String name : names) {
+            named.put(name, matcher.group(name));
+        }
+        this.input = input;
+        this.start = matcher.start();
+        this.end = matcher.end();
+    }
+    // group by number, negative numbers count from the end, nil when missing
+    Object group(long index) {
+        if (index < 0)
+            index += groups.length;
+        if (index < 0 || index >= groups.length || groups[(int) index] == null)
+            return null;
+        return new RubyString(groups[(int) index]);
+    }
+
+    Object group(Token token, String name) {
+        if (!named.containsKey(name)) {
+            throw new RuntimeError(token, "undefined group name reference: " + name + " (IndexError)");
+        }
+        String group = named.get(name);
+        return group == null ? null : new RubyString(group);
+    }
+
+    int begin(long index) {
+        return starts[(int) index];
+    }
+
+    int size() {
+        return groups.length;
+    }
+
+    RubyArray captures() {
+        RubyArray captures = new RubyArray(groups.length - 1);
+        for (int group = 1; group < groups.length; group++) {
+            captures.push(group(group));
+        }
+        return captures;
+    }
+
+    RubyString preMatch() {
+        return new RubyString(input.subSequence(0, start).toString());
+    }
+
+    RubyString postMatch() {
+        return new RubyString(input.subSequence(end, input.length()).toString());
+    }
+
+    @Override
+    public String toString() {
+        return groups[0];
+    }
+}
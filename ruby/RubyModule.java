@@ -0,0 +1,61 @@
+package ruby;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * A module of native functions and constants, like Math
+ * Math.sqrt(x) finds the function here and Math::PI the constant. The
+ * native methods of the builtin types are kept in modules too, their
+ * functions take the receiver as the first argument.
+ * A name can have natives of different arities, CSV.parse(text) and
+ * CSV.parse(text, options), the call picks the one its arguments fit.
+ */
+class RubyModule {
+    final String name;
+    private final Map<Symbol, NativeFunction> functions = new HashMap<>();
+    private final Map<Symbol, Object> constants = new HashMap<>();
+
+    RubyModule(String name) {
+        this.name = name;
+    }
+
+    void define(NativeFunction function) {
+        function.overload = functions.put(function.name, function);
+    }
+
+    void define(Symbol name, Object constant) {
+        constants.put(name, constant);
+    }
+    // the function of that name, null when there is none
+    NativeFunction function(Symbol name) {
+        return functions.get(name);
+    }
+    // the one taking count arguments, any of that name when none does so the arity error names one
+    NativeFunction function(Symbol name, int count) {
+        NativeFunction first = functions.get(name);
+        for (NativeFunction function = first; function != null; function = function.overload) {
+            if (function.arity() == count)
+                return function;
+        }
+        return first;
+    }
+
+    boolean hasConstant(Symbol name) {
+        return constants.containsKey(name);
+    }
+
+    Object constant(Symbol name) {
+        return constants.get(name);
+    }
+
+    Collection<NativeFunction> functions() {
+        return functions.values();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,231 @@
+package ruby;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * A ruby Range, 1..10 or 1...10
+ * Only the ends and the step are stored, the values in between are produced
+ * while iterating, so a range takes the same memory whatever its length.
+ * Integer ranges are also run as a counted loop by visitForStmt.
+ */
+class RubyRange implements Iterable<Object> {
+    final Object begin;
+    final Object end;
+    final boolean exclusive;
+    // a Long or a Double, 1 unless set by step
+    final Object step;
+    private final boolean stepped;
+
+    RubyRange(Object begin, Object end, boolean exclusive) {
+        this.begin = begin;
+        this.end = end;
+        this.exclusive = exclusive;
+        this.step = Arithmetic.box(1);
+        this.stepped = false;
+    }
+
+    private RubyRange(Object begin, Object end, boolean exclusive, Object step) {
+        this.begin = begin;
+        this.end = end;
+        this.exclusive = exclusive;
+        this.step = step;
+        this.stepped = true;
+    }
+    // true when the whole range can be walked with a primitive long
+    boolean isCounted() {
+        return begin instanceof Long && end instanceof Long && step instanceof Long;
+    }
+    // the last value reached by a counted range, may be below begin when empty
+    long last() {
+        long from = (Long) begin;
+        long to = (Long) end;
+        long by = (Long) step;
+        if (exclusive) {
+            if (to == Long.MIN_VALUE)
+                return to;
+            to--;
+        }
+        if (to < from)
+            return to;
+        long span = to - from;
+        if (span >= 0)
+            return to - span % by;
+        // the span itself overflowed a long
+        return to - BigInteger.valueOf(to).subtract(BigInteger.valueOf(from))
+                .mod(BigInteger.valueOf(by)).longValue();
+    }
+
+    RubyRange step(Token name, Object by) {
+        if (!(by instanceof Long || by instanceof Double)) {
+            throw new RuntimeError(name, "step must be numeric");
+        }
+        if (((Number) by).doubleValue() < 0) {
+            throw new RuntimeError(name, "step can't be negative");
+        }
+        if (((Number) by).doubleValue() == 0) {
+            throw new RuntimeError(name, "step can't be 0");
+        }
+        return new RubyRange(begin, end, exclusive, by);
+    }
+    /*
+     * include?, member? and === only compare against the ends
+     * and check that a stepped value is actually hit
+     */
+    boolean includes(Object value) {
+        if (!(value instanceof Long || value instanceof Double)) {
+            return false;
+        }
+        if (value instanceof Long && isCounted()) {
+            long x = (Long) value;
+            return x >= (Long) begin && x <= last() && (x - (Long) begin) % (Long) step == 0;
+        }
+        double x = ((Number) value).doubleValue();
+        double from = ((Number) begin).doubleValue();
+        double to = ((Number) end).doubleValue();
+        if (x < from || (exclusive ? x >= to : x > to)) {
+            return false;
+        }
+        return !stepped || (x - from) % ((Number) step).doubleValue() == 0;
+    }
+    // number of values, without walking them
+    Object size() {
+        if (isCounted()) {
+            return Arithmetic.normalize(count());
+        }
+        return Arithmetic.box(floatSteps() + 1);
+    }
+
+    private BigInteger count() {
+        long first = (Long) begin;
+        long last = last();
+        if (last < first)
+            return BigInteger.ZERO;
+        return BigInteger.valueOf(last).subtract(BigInteger.valueOf(first))
+                .divide(BigInteger.valueOf((Long) step)).add(BigInteger.ONE);
+    }
+    // 1 + 2 + ... + n in closed form for counted ranges
+    Object sum() {
+        if (!isCounted()) {
+            double total = 0;
+            for (Object value : this)
+                total += ((Number) value).doubleValue();
+            return total;
+        }
+        BigInteger count = count();
+        if (count.signum() == 0)
+            return Arithmetic.box(0);
+        // count * (first + last) / 2, always even so the shift is exact
+        BigInteger ends = BigInteger.valueOf((Long) begin).add(BigInteger.valueOf(last()));
+        return Arithmetic.normalize(count.multiply(ends).shiftRight(1));
+    }
+    /*
+     * number of whole steps between begin and end for a float range,
+     * with the same rounding slack ruby uses so 1.0..2.0 by 0.1 hits 2.0
+     */
+    private long floatSteps() {
+        double from = ((Number) begin).doubleValue();
+        double to = ((Number) end).doubleValue();
+        double by = ((Number) step).doubleValue();
+        double n = (to - from) / by;
+        double err = (Math.abs(from) + Math.abs(to) + Math.abs(to - from)) / Math.abs(by) * Math.ulp(1.0);
+        if (n < 0)
+            return -1;
+        if (err > 0.5)
+            err = 0.5;
+        if (exclusive) {
+            if (n <= 0)
+                return -1;
+            if (n < 1)
+                n = 0;
+            else
+                n = Math.floor(n - err);
+            double last = from + n * by;
+            if (last >= to)
+                n--;
+            return (long) n;
+        }
+        return (long) Math.floor(n + err);
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        if (isCounted()) {
+            return new Iterator<Object>() {
+                private long next = (Long) begin;
+                private final long last = last();
+                private boolean done = next > last;
+
+                @Override
+                public boolean hasNext() {
+                    return !done;
+                }
+
+                @Override
+                public Object next() {
+                    if (done)
+                        throw new NoSuchElementException();
+                    long value = next;
+                    // next <= last so the difference fits an unsigned long
+                    if (Long.compareUnsigned(last - next, (Long) step) < 0)
+                        done = true;
+                    else
+                        next += (Long) step;
+                    return Arithmetic.box(value);
+                }
+            };
+        }
+        if (begin instanceof Double && !stepped) {
+            throw new RuntimeError("can't iterate from Float");
+        }
+        if (!(begin instanceof Long || begin instanceof Double) || !(end instanceof Long || end instanceof Double)) {
+            throw new RuntimeError("can't iterate from " + Builtins.typeName(begin));
+        }
+        // float ranges compute each value from the index so errors don't add up
+        return new Iterator<Object>() {
+            private final double from = ((Number) begin).doubleValue();
+            private final double by = ((Number) step).doubleValue();
+            private final long steps = floatSteps();
+            private long index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index <= steps;
+            }
+
+            @Override
+            public Object next() {
+                if (index > steps)
+                    throw new NoSuchElementException();
+                double value = from + index * by;
+                if (!exclusive && index == steps && value > ((Number) end).doubleValue())
+                    value = ((Number) end).doubleValue();
+                index++;
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof RubyRange))
+            return false;
+        RubyRange range = (RubyRange) other;
+        return begin.equals(range.begin) && end.equals(range.end)
+                && exclusive == range.exclusive && step.equals(range.step);
+    }
+
+    @Override
+    public int hashCode() {
+        return (begin.hashCode() * 31 + end.hashCode()) * 31 + (exclusive ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        String range = Builtins.stringify(begin) + (exclusive ? "..." : "..") + Builtins.stringify(end);
+        if (!stepped)
+            return range;
+        return "((" + range + ").step(" + Builtins.stringify(step) + "))";
+    }
+}
@@ -0,0 +1,157 @@
+package ruby;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/*
+ * A ruby Regexp, /pattern/flags
+ * A literal is compiled once by the scanner and the same object is used
+ * every time that literal is evaluated. Patterns built while the program
+ * runs (Regexp.new, string patterns) are compiled through a small LRU
+ * cache, so a pattern made inside a loop is not compiled on every turn.
+ * Strings are matched in place, RubyString is the CharSequence the
+ * Matcher reads from.
+ */
+class RubyRegexp {
+    static final RubyClass CLASS = new RubyClass("Regexp", RubyClass.OBJECT);
+    private static final int CACHE_SIZE = 64;
+    private static final Pattern GROUP_NAME = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+    private static final Map<String, RubyRegexp> cache = new LinkedHashMap<String, RubyRegexp>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RubyRegexp> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    final Pattern pattern;
+    final String source;
+    final String options;
+    // names of the (?<name>...) groups, read from the source once
+    private final List<String> groupNames = new ArrayList<>();
+
+    private RubyRegexp(String source, String options) {
+        this.source = source;
+        this.options = options;
+        int flags = 0;
+        for (char option : options.toCharArray()) {
+            if (option == 'i')
+                flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+            else if (option == 'm')
+                flags |= Pattern.DOTALL;
+            else if (option == 'x')
+                flags |= Pattern.COMMENTS;
+        }
+        // ^ and $ match at every line in ruby
+        this.pattern = Pattern.compile(source, flags | Pattern.MULTILINE);
+        Matcher names = GROUP_NAME.matcher(source);
+        while (names.find()) {
+            groupNames.add(names.group(1));
+        }
+    }
+    // for a literal, the PatternSyntaxException is reported by the scanner
+    static RubyRegexp literal(String source, String options) {
+        return new RubyRegexp(source, options);
+    }
+    // a pattern made at run time, from the cache when it was seen lately
+    static synchronized RubyRegexp compile(Token token, String source, String options) {
+        String key = options + "/" + source;
+        RubyRegexp regexp = cache.get(key);
+        if (regexp == null) {
+            try {
+                regexp = new RubyRegexp(source, options);
+            } catch (PatternSyntaxException error) {
+                throw new RuntimeError(token, error.getDescription() + ": /" + source + "/ (RegexpError)");
+            }
+            cache.put(key, regexp);
+        }
+        return regexp;
+    }
+    // a string pattern matches its text literally
+    static RubyRegexp quote(Token token, CharSequence text) {
+        return compile(token, Pattern.quote(text.toString()), "");
+    }
+    // the match starting at or after from, null when there is none
+    RubyMatch match(CharSequence input, int from) {
+        if (from < 0 || from > input.length())
+            return null;
+        Matcher matcher = pattern.matcher(input);
+        if (!matcher.find(from))
+            return null;
+        return new RubyMatch(matcher, input, groupNames);
+    }
+    // match? only asks whether there is a match, no MatchData is made
+    boolean matches(CharSequence input) {
+        return pattern.matcher(input).find();
+    }
+    /*
+     * sub and gsub, \0 or \& in the replacement is the whole match,
+     * \1 to \9 the groups
+     */
+    RubyString replace(CharSequence input, CharSequence replacement, boolean all) {
+        Matcher matcher = pattern.matcher(input);
+        if (!matcher.find())
+            return new RubyString(input.toString());
+        StringBuilder result = new StringBuilder(input.length() + replacement.length());
+        int last = 0;
+        do {
+            result.append(input, last, matcher.start());
+            expand(matcher, replacement, result);
+            last = matcher.end();
+            // as in ruby, an empty match keeps the char after it and the next search starts past that
+            if (matcher.end() == matcher.start()) {
+                if (last == input.length())
+                    break;
+                result.append(input.charAt(last));
+                last++;
+            }
+        } while (all && matcher.find(last));
+        if (last < input.length())
+            result.append(input, last, input.length());
+        return new RubyString(result.toString());
+    }
+
+    private static void expand(Matcher matcher, CharSequence replacement, StringBuilder result) {
+        for (int i = 0; i < replacement.length(); i++) {
+            char c = replacement.charAt(i);
+            if (c != '\\' || i + 1 == replacement.length()) {
+                result.append(c);
+                continue;
+            }
+            char next = replacement.charAt(++i);
+            if (next == '&') {
+                result.append(matcher.group());
+            } else if (next >= '0' && next <= '9') {
+                int group = next - '0';
+                if (group <= matcher.groupCount() && matcher.group(group) != null)
+                    result.append(matcher.group(group));
+            } else if (next == '\\') {
+                result.append('\\');
+            } else {
+                result.append(c).append(next);
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof RubyRegexp))
+            return false;
+        RubyRegexp regexp = (RubyRegexp) other;
+        return source.equals(regexp.source) && options.equals(regexp.options);
+    }
+
+    @Override
+    public int hashCode() {
+        return source.hashCode() * 31 + options.hashCode();
+    }
+    // inspect form, /pattern/flags
+    @Override
+    public String toString() {
+        return "/" + source + "/" + options;
+    }
+}
@@ -0,0 +1,197 @@
+package ruby;
+
+/*
+ * A mutable ruby String
+ * Strings that are built by appending share one growable char buffer.
+ * Every string is a prefix of its buffer, so appending to the string that
+ * ends at the end of the buffer (the usual s += ... in a loop) just writes
+ * into the spare room, while older strings sharing the buffer keep seeing
+ * their own, shorter prefix. Anyone else appending copies first.
+ * The java String form is only built when the string is read, printed or
+ * compared and is cached until the next change.
+ */
+class RubyString implements CharSequence, Comparable<RubyString> {
+    private static final class Buffer {
+        char[] chars;
+        int count;
+
+        Buffer(int capacity) {
+            chars = new char[Math.max(capacity, 16)];
+        }
+
+        Buffer(char[] chars, int count) {
+            this.chars = chars;
+            this.count = count;
+        }
+
+        void reserve(int extra) {
+            int needed = count + extra;
+            if (needed > chars.length) {
+                char[] grown = new char[Math.max(needed, chars.length * 2)];
+                System.arraycopy(chars, 0, grown, 0, count);
+                chars = grown;
+            }
+        }
+    }
+    // null until the string is appended to, then the chars live here
+    private Buffer buffer;
+    private int length;
+    // flattened value, null when it has to be rebuilt from the buffer
+    private String flat;
+    private int hash;
+
+    RubyString(String value) {
+        this.flat = value;
+        this.length = value.length();
+    }
+
+    private RubyString(Buffer buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+    // a string of the first length chars, which it takes over, the caller must not touch them again
+    static RubyString wrap(char[] chars, int length) {
+        return new RubyString(new Buffer(chars, length), length);
+    }
+    // true when this string ends where its buffer ends, so it can grow in place
+    private boolean ownsTail() {
+        return buffer != null && buffer.count == length;
+    }
+    // a fresh buffer holding a copy of this string with room for extra chars
+    private Buffer copy(int extra) {
+        Buffer copy = new Buffer(length + Math.max(extra, length));
+        getChars(copy.chars, 0);
+        copy.count = length;
+        return copy;
+    }
+
+    private static void appendTo(Buffer target, CharSequence other, int n) {
+        target.reserve(n);
+        if (other instanceof RubyString) {
+            ((RubyString) other).getChars(target.chars, target.count);
+        } else {
+            other.toString().getChars(0, n, target.chars, target.count);
+        }
+        target.count += n;
+    }
+    // copies the chars of this string into dst starting at index at
+    void getChars(char[] dst, int at) {
+        if (buffer != null) {
+            System.arraycopy(buffer.chars, 0, dst, at, length);
+        } else {
+            flat.getChars(0, length, dst, at);
+        }
+    }
+    // +, a new string, amortized O(1) when this string owns its buffer's tail
+    RubyString plus(CharSequence other) {
+        int n = other.length();
+        Buffer target = ownsTail() ? buffer : copy(n);
+        appendTo(target, other, n);
+        return new RubyString(target, length + n);
+    }
+    // <<, appends to this very string
+    RubyString append(CharSequence other) {
+        int n = other.length();
+        if (!ownsTail()) {
+            buffer = copy(n);
+        }
+        appendTo(buffer, other, n);
+        length += n;
+        flat = null;
+        hash = 0;
+        return this;
+    }
+    // str * count, filled by doubling so it is linear in the result
+    RubyString times(Token token, long count) {
+        if (count < 0) {
+            throw new RuntimeError(token, "negative argument");
+        }
+        // divided, as count * length can overflow a long
+        if (length > 0 && count > (Integer.MAX_VALUE - 8) / length) {
+            throw new RuntimeError(token, "argument too big");
+        }
+        int total = (int) (count * length);
+        Buffer result = new Buffer(total);
+        if (total > 0) {
+            getChars(result.chars, 0);
+            int filled = length;
+            while (filled < total) {
+                int chunk = Math.min(filled, total - filled);
+                System.arraycopy(result.chars, 0, result.chars, filled, chunk);
+                filled += chunk;
+            }
+        }
+        result.count = total;
+        return new RubyString(result, total);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException(index);
+        return buffer != null ? buffer.chars[index] : flat.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (flat != null)
+            return flat.substring(start, end);
+        // copies just the part, not the whole string
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + length);
+        return new String(buffer.chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) {
+            flat = new String(buffer.chars, 0, length);
+        }
+        return flat;
+    }
+
+    @Override
+    public int compareTo(RubyString other) {
+        int shorter = Math.min(length, other.length);
+        for (int i = 0; i < shorter; i++) {
+            char a = charAt(i);
+            char b = other.charAt(i);
+            if (a != b)
+                return a - b;
+        }
+        return length - other.length;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (!(other instanceof RubyString))
+            return false;
+        RubyString string = (RubyString) other;
+        if (length != string.length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) != string.charAt(i))
+                return false;
+        }
+        return true;
+    }
+    // same value as String.hashCode, cached until the string changes
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0 && length > 0) {
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + charAt(i);
+            }
+            hash = h;
+        }
+        return h;
+    }
+}
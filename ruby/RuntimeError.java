@@ -15,4 +15,10 @@ public class RuntimeError extends RuntimeException {
         super(message);
         this.token = new Token(NIL, "", "", 0);
     }
+    // an error raised without a position, by a native for one, takes the one of its call
+    RuntimeError at(Token token) {
+        if (this.token.type == NIL && this.token.line == 0)
+            return new RuntimeError(token, getMessage());
+        return this;
+    }
 }
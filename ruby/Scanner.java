@@ -1,9 +1,11 @@
 package ruby;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.PatternSyntaxException;
 import static ruby.TokenType.*;
 
 public class Scanner {
@@ -54,7 +56,7 @@ public class Scanner {
         keywords.put("until", UNTIL);
         keywords.put("break", BREAK);
         keywords.put("redo", REDO);
-        // keywords.put("yield");
+        keywords.put("yield", YIELD);
 
     }
 
@@ -69,6 +71,10 @@ public class Scanner {
     private int start = 0;
     private int current = 0;
     private int line = 1;
+    // set for the code inside "#{...}", which stops at the unmatched }
+    private boolean embedded = false;
+    private boolean closed = false;
+    private int braces = 0;
 
     // Parameterized constructor
     /*
@@ -77,9 +83,16 @@ public class Scanner {
     Scanner(String source) {
         this.source = source;
     }
+    // scanner for the code of an interpolation starting at current
+    private Scanner(String source, int current, int line) {
+        this.source = source;
+        this.current = current;
+        this.line = line;
+        this.embedded = true;
+    }
 
     List<Token> scanTokens() {
-        while (!isAtEnd()) {
+        while (!isAtEnd() && !closed) {
             // beginning of next lex
             // After geerating one token, change start to current
             // Which is the start of next lexeme
@@ -106,9 +119,16 @@ public class Scanner {
                 addToken(RIGHT_PAREN);
                 break;
             case '{':
+                braces++;
                 addToken(LEFT_BRACE);
                 break;
             case '}':
+                // the brace closing a #{...} ends the embedded scan
+                if (embedded && braces == 0) {
+                    closed = true;
+                    break;
+                }
+                braces--;
                 addToken(RIGHT_BRACE);
                 break;
             case '[':
@@ -165,11 +185,21 @@ public class Scanner {
                 break;
 
             case '!':
-                addToken(match('=') ? BANG_EQUAL : BANG);
+                if (match('~')) {
+                    addToken(BANG_TILDE);
+                } else {
+                    addToken(match('=') ? BANG_EQUAL : BANG);
+                }
                 break;
             case '=':
                 if (match('=')){
-                    addToken(EQUAL_EQUAL);
+                    addToken(match('=') ? EQUAL_EQUAL_EQUAL : EQUAL_EQUAL);
+                }
+                else if (match('>')){
+                    addToken(FAT_ARROW_OP);
+                }
+                else if (match('~')){
+                    addToken(EQUAL_TILDE);
                 }
                 else if (iscomment()){
                     break;
@@ -197,7 +227,23 @@ public class Scanner {
                 break;
 
             case ':':
-                addToken(match(':') ? COLON_COLON : COLON);
+                if (match(':')) {
+                    addToken(COLON_COLON);
+                } else if (isAlpha(peek()) && peek() != '$') {
+                    symbol();
+                } else {
+                    addToken(COLON);
+                }
+                break;
+            // instance variables, @name
+            case '@':
+                if (isAlpha(peek()) && peek() != '$') {
+                    while (isAlphanumeric(peek()))
+                        advance();
+                    addToken(INSTANCE_VARIABLE, Symbol.intern(source.substring(start, current)));
+                } else {
+                    Ruby.error(line, "Unexpected Character");
+                }
                 break;
             case '&':
                 addToken(match('&') ? AND : AMPERSAND);
@@ -212,7 +258,9 @@ public class Scanner {
                 addToken(TILDA);
                 break;
             case '/':
-                if (match('=')) {
+                if (regexAllowed()) {
+                    regex();
+                } else if (match('=')) {
                     addToken(SLASH_EQUAL);
                 } else {
                     addToken(SLASH);
@@ -324,75 +372,184 @@ public class Scanner {
     }
     /*
      * Method to generate string tokens
+     * Escapes are decoded here in one pass. A string with #{...} in it
+     * becomes a STRING_TEMPLATE whose literal is the list of its parts:
+     * the constant text between the interpolations as Strings and the
+     * tokens of each interpolated expression, scanned here once.
      */
     private void string() {
+        quoted('"', true);
+    }
+    /*
+     * String with single quotes 
+     */
+    private void string2() {
+        quoted('\'', false);
+    }
+
+    private void quoted(char quote, boolean interpolates) {
+        List<Object> parts = null;
+        StringBuilder value = new StringBuilder();
         /*
          * Ruby supports multiline strings...
          */
-        while (peek() != '"' && !isAtEnd()) {
-            if (peek() == '\n')
+        while (peek() != quote && !isAtEnd()) {
+            char c = advance();
+            if (c == '\n') {
                 line++;
-            advance();
+            }
+            if (c == '\\' && !isAtEnd()) {
+                escape(advance(), value, interpolates);
+            } else if (c == '#' && interpolates && peek() == '{') {
+                advance();
+                if (parts == null)
+                    parts = new ArrayList<>();
+                parts.add(value.toString());
+                value.setLength(0);
+                parts.add(interpolation());
+            } else {
+                value.append(c);
+            }
         }
         if (isAtEnd()) {
             Ruby.error(line, "Unterminated String");
             return;
         }
 
-        // This is for the closing "
+        // This is for the closing quote
         advance();
-
-        String value = source.substring(start + 1, current - 1);
-        /*
-         * Java reads the bytes and adds extra slash
-         * Soo need to remove
-         * \" \\"
-         */
-        value = value.replace("\\n", "\n");
-        value = value.replace("\\t", "\t");
-        value = value.replace("\\r", "\r");
-        value = value.replace("\\f", "\f");
-        // value = value.replace(, "\n");
-        value = value.replace("\\'", "\'");
-        value = value.replace("\\\\", "\\");
-        // System.out.println(value+"scanner");
-        addToken(STRING, value);
+        if (parts == null) {
+            addToken(STRING, value.toString());
+            return;
+        }
+        parts.add(value.toString());
+        addToken(STRING_TEMPLATE, parts);
     }
     /*
-     * String with single quotes 
+     * The char a backslash escape stands for, unknown escapes are kept as they are
+     * Single quotes decode only the escapes they always did, as in ruby
+     * 'c\sd' and '\e' stay the chars they are written with.
      */
-    private void string2() {
-        /*
-         * Ruby supports multiline strings...
-         */
-        while (peek() != '\'' && !isAtEnd()) {
-            if (peek() == '\n')
+    private void escape(char c, StringBuilder value, boolean interpolates) {
+        if (!interpolates && "ntrf\\'".indexOf(c) < 0) {
+            if (c == '\n')
                 line++;
-            advance();
+            value.append('\\').append(c);
+            return;
+        }
+        switch (c) {
+            case 'n':
+                value.append('\n');
+                break;
+            case 't':
+                value.append('\t');
+                break;
+            case 'r':
+                value.append('\r');
+                break;
+            case 'f':
+                value.append('\f');
+                break;
+            case 'e':
+                value.append('\u001b');
+                break;
+            case 's':
+                value.append(' ');
+                break;
+            case '0':
+                value.append('\0');
+                break;
+            case '\\':
+            case '\'':
+            case '"':
+            case '#':
+                value.append(c);
+                break;
+            case '\n':
+                line++;
+                value.append('\\').append(c);
+                break;
+            default:
+                value.append('\\').append(c);
+        }
+    }
+    // the tokens of the code in #{...}, current is just after the {
+    private List<Token> interpolation() {
+        Scanner scanner = new Scanner(source, current, line);
+        List<Token> code = new ArrayList<>();
+        for (Token token : scanner.scanTokens()) {
+            // the expression may be spread over several lines
+            if (token.type != NEWLINE)
+                code.add(token);
+        }
+        if (!scanner.closed) {
+            Ruby.error(line, "Unterminated interpolation");
+        }
+        current = scanner.current;
+        line = scanner.line;
+        return code;
+    }
+    /*
+     * A / where a value may start opens a regex, after a value it divides
+     * so a / b is a division and puts /b/ a regex
+     */
+    private boolean regexAllowed() {
+        if (tokens.isEmpty())
+            return true;
+        switch (tokens.get(tokens.size() - 1).type) {
+            case IDENTIFIER:
+            case INSTANCE_VARIABLE:
+            case INTEGER:
+            case FLOAT:
+            case STRING:
+            case STRING_TEMPLATE:
+            case SYMBOL:
+            case REGEX:
+            case RIGHT_PAREN:
+            case RIGHT_SQUARE:
+            case RIGHT_BRACE:
+            case END:
+            case SELF:
+            case TRUE:
+            case FALSE:
+            case NIL:
+                return false;
+            default:
+                return true;
+        }
+    }
+    /*
+     * /pattern/flags, compiled here once for the literal
+     * escapes are left for the Pattern except \/ which only hides the /
+     */
+    private void regex() {
+        StringBuilder pattern = new StringBuilder();
+        while (peek() != '/' && !isAtEnd()) {
+            char c = advance();
+            if (c == '\n')
+                line++;
+            if (c == '\\' && peek() == '/') {
+                pattern.append(advance());
+            } else if (c == '\\' && !isAtEnd()) {
+                pattern.append(c).append(advance());
+            } else {
+                pattern.append(c);
+            }
         }
         if (isAtEnd()) {
-            Ruby.error(line, "Unterminated String");
+            Ruby.error(line, "Unterminated regexp");
             return;
         }
-
-        // This is for the closing '
+        // This is for the closing /
         advance();
-
-        String value = source.substring(start + 1, current - 1);
-        /*
-         * Java reads the bytes and adds extra slash
-         * Soo need to remove
-         * \" \\"
-         */
-        value = value.replace("\\n", "\n");
-        value = value.replace("\\t", "\t");
-        value = value.replace("\\r", "\r");
-        value = value.replace("\\f", "\f");
-        // value = value.replace(, "\n");
-        value = value.replace("\\'", "\'");
-        value = value.replace("\\\\", "\\");
-        // System.out.println(value+"scanner");
-        addToken(STRING, value);
+        int options = current;
+        while (peek() == 'i' || peek() == 'm' || peek() == 'x')
+            advance();
+        try {
+            addToken(REGEX, RubyRegexp.literal(pattern.toString(), source.substring(options, current)));
+        } catch (PatternSyntaxException error) {
+            Ruby.error(line, "invalid regular expression: " + error.getDescription());
+        }
     }
     /*
      * method to check if it is number
@@ -449,25 +606,32 @@ public class Scanner {
      */
     private void number() {
         boolean isFloat = false;
-        while (isDigit(peek()))
+        // ruby allows 1_000_000
+        while (isDigit(peek()) || (peek() == '_' && isDigit(peekNext())))
             advance();
         // Not considering method, have to change
         if (peek() == '.' && isDigit(peekNext())) {
             isFloat = true;
             advance();
-            while (isDigit(peek()))
+            while (isDigit(peek()) || (peek() == '_' && isDigit(peekNext())))
                 advance();
             // Checking if identifier is named with number
             if (isAlpha(peek())) {
                 Ruby.error(line, "Invalid Indentifier");
             }
         }
+        String digits = source.substring(start, current).replace("_", "");
         if (!isFloat) {
-            addToken(INTEGER, Integer.parseInt((source.substring(start, current))));
+            // integers are longs, literals too big for a long become a BigInteger
+            if (digits.length() < 19) {
+                addToken(INTEGER, Arithmetic.box(Long.parseLong(digits)));
+            } else {
+                addToken(INTEGER, Arithmetic.normalize(new BigInteger(digits)));
+            }
         }
         // we are using java's double for float in ruby
         else {
-            addToken(FLOAT, Double.parseDouble((source.substring(start, current))));
+            addToken(FLOAT, Double.parseDouble(digits));
         }
 
     }
@@ -479,12 +643,29 @@ public class Scanner {
     private void identifier() {
         while (isAlphanumeric(peek()))
             advance();
+        // predicate and bang method names like include? and gsub!
+        if ((peek() == '?' || peek() == '!') && peekNext() != '=')
+            advance();
         String text = source.substring(start, current);
         TokenType type = keywords.get(text);
-        if (type == null)
-            type = IDENTIFIER;
+        if (type == null) {
+            // the name is interned here once instead of on every lookup
+            addToken(IDENTIFIER, Symbol.intern(text));
+            return;
+        }
         addToken(type);
     }
+    // :name, keywords are plain names here as in :end
+    private void symbol() {
+        while (isAlphanumeric(peek()))
+            advance();
+        if ((peek() == '?' || peek() == '!') && peekNext() != '=')
+            advance();
+        // setter names like :name=, but not :name=>
+        else if (peek() == '=' && peekNext() != '=' && peekNext() != '>')
+            advance();
+        addToken(SYMBOL, Symbol.intern(source.substring(start + 1, current)));
+    }
     /*
      * method to check for alphabets and _
      */
@@ -0,0 +1,91 @@
+package ruby;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * The layout of an object's instance variables, which slot holds which @name
+ * Objects don't carry a map of their own. They point at a shared Shape and
+ * keep the values in a plain array. Adding a variable moves the object to
+ * the next shape along a transition, so objects that set the same variables
+ * in the same order (the usual initialize) all end up with the same Shape.
+ * That makes the shape a cheap key for the caches at each @name site.
+ */
+final class Shape {
+    static final Shape EMPTY = new Shape(new Symbol[0]);
+
+    private final Symbol[] names;
+    // shapes reached by adding one more name, made on first use
+    private Map<Symbol, Shape> transitions;
+
+    private Shape(Symbol[] names) {
+        this.names = names;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    Symbol nameAt(int slot) {
+        return names[slot];
+    }
+    // slot of the name, -1 when objects of this shape don't have it
+    int slotOf(Symbol name) {
+        for (int slot = names.length - 1; slot >= 0; slot--) {
+            if (names[slot] == name)
+                return slot;
+        }
+        return -1;
+    }
+    // this shape plus name in the next slot
+    Shape with(Symbol name) {
+        if (transitions == null) {
+            transitions = new HashMap<>();
+        }
+        Shape next = transitions.get(name);
+        if (next == null) {
+            Symbol[] grown = Arrays.copyOf(names, names.length + 1);
+            grown[names.length] = name;
+            next = new Shape(grown);
+            transitions.put(name, next);
+        }
+        return next;
+    }
+    /*
+     * Inline cache of one @name site, remembering the slot for the last shape
+     * seen there. A cache serves either reads or writes, never both.
+     */
+    static final class Cache {
+        private Shape shape;
+        // the shape after the write, the same shape when the slot already existed
+        private Shape next;
+        private int slot;
+
+        Object read(RubyInstance instance, Symbol name) {
+            Shape current = instance.shape;
+            if (current != shape) {
+                slot = current.slotOf(name);
+                shape = current;
+            }
+            return slot < 0 ? null : instance.slots[slot];
+        }
+
+        void write(RubyInstance instance, Symbol name, Object value) {
+            Shape current = instance.shape;
+            if (current != shape) {
+                slot = current.slotOf(name);
+                next = current;
+                if (slot < 0) {
+                    slot = current.size();
+                    next = current.with(name);
+                }
+                shape = current;
+            }
+            if (next != current) {
+                instance.reshape(next);
+            }
+            instance.slots[slot] = value;
+        }
+    }
+}
@@ -34,10 +34,12 @@ abstract class Stmt {
 		R visitReturnStmt(Return stmt);
 
 		R visitNextStmt(Next stmt);
+
+		R visitClassStmt(Class stmt);
 	}
     // case statement implementation
 	static class Case extends Stmt {
-		Case(Expr condition, List<Expr> conditions, List<List<Stmt>> branches, List<Stmt> elseBranch) {
+		Case(Expr condition, List<List<Expr>> conditions, List<List<Stmt>> branches, List<Stmt> elseBranch) {
 			this.condition = condition;
 			this.conditions = conditions;
 			this.branches = branches;
@@ -50,9 +52,13 @@ abstract class Stmt {
 		}
 
 		final Expr condition;
-		final List<Expr> conditions;
+		// the values of each when, when 1, 2 has two
+		final List<List<Expr>> conditions;
 		final List<List<Stmt>> branches;
 		final List<Stmt> elseBranch;
+		// built on the first run, null when the arms are not all constant
+		CaseDispatch dispatch;
+		boolean compiled;
 	}
     // break statement implementation
 	static class Break extends Stmt {
@@ -157,11 +163,14 @@ abstract class Stmt {
      // for statement implementation
 	 static class For extends Stmt {
 		public final Token variable;
+		// the second name in for key, value in ..., null when there is only one
+		public final Token value;
 		public final Expr iterable;
 		public final List<Stmt> body;
 
-		public For(Token variable, Expr iterable, List<Stmt> body) {
+		public For(Token variable, Token value, Expr iterable, List<Stmt> body) {
 			this.variable = variable;
+			this.value = value;
 			this.iterable = iterable;
 			this.body = body;
 		}
@@ -249,5 +258,28 @@ abstract class Stmt {
 		final List<Expr> initializer;
 	}
 
+    // class statement implementation, attr_* names are kept without the ':'
+	static class Class extends Stmt {
+		Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods, List<Token> readers,
+				List<Token> writers) {
+			this.name = name;
+			this.superclass = superclass;
+			this.methods = methods;
+			this.readers = readers;
+			this.writers = writers;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitClassStmt(this);
+		}
+
+		final Token name;
+		final Expr.Variable superclass;
+		final List<Stmt.Function> methods;
+		final List<Token> readers;
+		final List<Token> writers;
+	}
+
 	abstract <R> R accept(Visitor<R> visitor);
 }
@@ -0,0 +1,121 @@
+package ruby;
+
+import java.math.BigInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Native methods of String, the receiver is the first parameter
+ * The methods that work with regexps stay in Builtins.
+ */
+final class StringModule {
+    private static final Pattern FLOAT = Pattern.compile("[+-]?\\d+(\\.\\d+)?([eE][+-]?\\d+)?");
+
+    private StringModule() {
+    }
+
+    @Native
+    static String reverse(RubyString self) {
+        return new StringBuilder(self).reverse().toString();
+    }
+
+    @Native
+    static String strip(RubyString self) {
+        return self.toString().strip();
+    }
+
+    @Native
+    static String lstrip(RubyString self) {
+        return self.toString().stripLeading();
+    }
+
+    @Native
+    static String rstrip(RubyString self) {
+        return self.toString().stripTrailing();
+    }
+    // removes one trailing line break
+    @Native
+    static String chomp(RubyString self) {
+        String string = self.toString();
+        if (string.endsWith("\r\n"))
+            return string.substring(0, string.length() - 2);
+        if (string.endsWith("\n") || string.endsWith("\r"))
+            return string.substring(0, string.length() - 1);
+        return string;
+    }
+
+    @Native
+    static String capitalize(RubyString self) {
+        String string = self.toString();
+        if (string.isEmpty())
+            return string;
+        return Character.toUpperCase(string.charAt(0)) + string.substring(1).toLowerCase();
+    }
+
+    @Native
+    static RubyArray chars(RubyString self) {
+        RubyArray chars = new RubyArray(self.length());
+        for (int i = 0; i < self.length(); i++)
+            chars.push(new RubyString(String.valueOf(self.charAt(i))));
+        return chars;
+    }
+
+    @Native("start_with?")
+    static boolean startsWith(RubyString self, RubyString prefix) {
+        return self.toString().startsWith(prefix.toString());
+    }
+
+    @Native("end_with?")
+    static boolean endsWith(RubyString self, RubyString suffix) {
+        return self.toString().endsWith(suffix.toString());
+    }
+    // position of the first occurrence, nil when there is none
+    @Native
+    static Object index(RubyString self, RubyString part) {
+        int at = self.toString().indexOf(part.toString());
+        return at < 0 ? null : Arithmetic.box(at);
+    }
+
+    @Native
+    static long ord(RubyString self) {
+        if (self.length() == 0)
+            throw new RuntimeError("empty string");
+        return self.charAt(0);
+    }
+
+    @Native
+    static String ljust(RubyString self, long width) {
+        return pad(self, width, false);
+    }
+
+    @Native
+    static String rjust(RubyString self, long width) {
+        return pad(self, width, true);
+    }
+    // the leading integer, 0 when there is none
+    @Native
+    static Object to_i(RubyString self) {
+        String string = self.toString().strip().replace("_", "");
+        int end = 0;
+        if (end < string.length() && (string.charAt(end) == '-' || string.charAt(end) == '+'))
+            end++;
+        int digits = end;
+        while (end < string.length() && Character.isDigit(string.charAt(end)))
+            end++;
+        if (end == digits)
+            return Arithmetic.box(0);
+        return Arithmetic.normalize(new BigInteger(string.substring(0, end)));
+    }
+    // the leading float, 0.0 when there is none
+    @Native
+    static double to_f(RubyString self) {
+        Matcher number = FLOAT.matcher(self.toString().strip().replace("_", ""));
+        return number.lookingAt() ? Double.parseDouble(number.group()) : 0.0;
+    }
+
+    private static String pad(RubyString self, long width, boolean left) {
+        int missing = (int) Math.min(Math.max(width - self.length(), 0), Integer.MAX_VALUE - 8 - self.length());
+        String padding = " ".repeat(missing);
+        return left ? padding + self : self + padding;
+    }
+}
@@ -0,0 +1,55 @@
+package ruby;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * A ruby Symbol, :name, and the interned form of every identifier
+ * The scanner interns each identifier and symbol literal once, so the same
+ * name is always the same Symbol object with a small integer id. Symbols are
+ * compared by identity and hashed by id, scopes and hashes keyed by them
+ * never hash or compare the characters of a name again.
+ */
+final class Symbol {
+    private static final Map<String, Symbol> table = new HashMap<>();
+
+    final int id;
+    final String name;
+    // what the first character says about the name, worked out once here
+    final boolean isGlobal;
+    final boolean isConstant;
+    // counts the writes of this name in any scope, a call site that found a
+    // function under the name reuses it while the count is unchanged
+    long version;
+
+    private Symbol(int id, String name) {
+        this.id = id;
+        this.name = name;
+        char first = name.isEmpty() ? ' ' : name.charAt(0);
+        this.isGlobal = first == '$';
+        this.isConstant = first >= 'A' && first <= 'Z';
+    }
+    // the one Symbol for a name, made on first use
+    static synchronized Symbol intern(String name) {
+        Symbol symbol = table.get(name);
+        if (symbol == null) {
+            symbol = new Symbol(table.size(), name);
+            table.put(name, symbol);
+        }
+        return symbol;
+    }
+    // inspect form, :name
+    String inspect() {
+        return ":" + name;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+    // puts :name prints the bare name
+    @Override
+    public String toString() {
+        return name;
+    }
+}
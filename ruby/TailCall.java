@@ -0,0 +1,18 @@
+package ruby;
+
+import java.util.List;
+
+/*
+ * thrown by a call in tail position so the calling RubyFunction
+ * can run the callee in its own loop instead of nesting a new frame
+ */
+
+class TailCall extends RuntimeException {
+    final RubyFunction function;
+    final List<Object> arguments;
+    TailCall(RubyFunction function, List<Object> arguments) {
+      super(null, null, false, false);
+      this.function = function;
+      this.arguments = arguments;
+    }
+}
@@ -14,7 +14,7 @@ enum TokenType {
     // general arithmetic ops
     MINUS, PLUS, SLASH, STAR, MOD,
     // One/two char tokens
-    BANG_EQUAL, EQUAL_EQUAL, GREATER, GREATER_EQUAL,
+    BANG_EQUAL, EQUAL_EQUAL, EQUAL_EQUAL_EQUAL, EQUAL_TILDE, BANG_TILDE, GREATER, GREATER_EQUAL,
     LESS, LESS_EQUAL,
     // Logical ops && ||
     AMPERSAND_AMPERSAND, PIPE_PIPE, BANG,
@@ -23,11 +23,11 @@ enum TokenType {
     // Bitwise ops
     AMPERSAND, PIPE, KARROT, TILDA, LEFT_SHIFT, RIGHT_SHIFT,
     // literals
-    IDENTIFIER, GLOBAL_IDENTIFIER, CONSTANT_IDENTIFIER, INTEGER, FLOAT, STRING, ARRAY, HASH, REGEX,
+    IDENTIFIER, GLOBAL_IDENTIFIER, CONSTANT_IDENTIFIER, INSTANCE_VARIABLE, INTEGER, FLOAT, STRING, STRING_TEMPLATE, ARRAY, HASH, REGEX, SYMBOL,
     // Keywords
     IF, ELSE, ELSIF, UNLESS, WHILE, FOR, LOOP, DO, END, DEF, CLASS, MODULE,
     RETURN, BREAK, NEXT, NIL, TRUE, FALSE, SUPER, SELF, CASE, WHEN, BEGIN,
-    RESCUE, ENSURE, RETRY, NOT, AND, OR, IN, THEN, UNTIL, REDO,
+    RESCUE, ENSURE, RETRY, NOT, AND, OR, IN, THEN, UNTIL, REDO, YIELD,
 
     NEWLINE, // We need newline in ruby parsing
     PRINT, PUTS,
@@ -54,6 +54,15 @@ public class Token {
         this.literal = literal;
         this.line = line;
     }
+    /*
+     * The interned name of an identifier, the scanner already stores it as
+     * the literal so only tokens made up later have to look it up
+     */
+    Symbol symbol() {
+        if (literal instanceof Symbol)
+            return (Symbol) literal;
+        return Symbol.intern(lexeme);
+    }
     /*
      * Method to print Token for debugging purposes 
      * returns the needed data as a string